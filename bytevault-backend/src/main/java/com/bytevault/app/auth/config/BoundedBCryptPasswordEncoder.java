@@ -0,0 +1,89 @@
+package com.bytevault.app.auth.config;
+
+import com.bytevault.app.auth.service.TooManyAttemptsException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在有界线程池中执行哈希计算的 BCrypt 编码器
+ * BCrypt 每次计算都会占满一个CPU核心，登录和注册的哈希计算统一交给固定大小的线程池，
+ * 撞库或部署后集中重新登录时最多占用线程池大小的核心，不会拖慢文件请求；
+ * 队列已满或等待超时时立即拒绝，由控制器返回429。
+ */
+@Slf4j
+public class BoundedBCryptPasswordEncoder extends BCryptPasswordEncoder {
+
+    private static final long RETRY_AFTER_SECONDS = 1;
+
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+
+    /**
+     * @param threads 哈希线程数
+     * @param queueCapacity 等待队列长度
+     * @param timeoutMillis 调用方等待哈希结果的最长时间（毫秒）
+     */
+    public BoundedBCryptPasswordEncoder(int threads, int queueCapacity, long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "bcrypt-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(() -> super.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(() -> super.matches(rawPassword, encodedPassword));
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> T run(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            log.warn("密码哈希队列已满，拒绝请求");
+            throw new TooManyAttemptsException("服务繁忙，请稍后重试", RETRY_AFTER_SECONDS);
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.warn("等待密码哈希超时");
+            throw new TooManyAttemptsException("服务繁忙，请稍后重试", RETRY_AFTER_SECONDS);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待密码哈希时被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("密码哈希失败", cause);
+        }
+    }
+}
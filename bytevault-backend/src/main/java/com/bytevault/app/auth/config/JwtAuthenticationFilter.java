@@ -1,5 +1,8 @@
 package com.bytevault.app.auth.config;
 
+import com.bytevault.app.auth.model.UserDetailsImpl;
+import com.bytevault.app.auth.model.VerifiedToken;
+import com.bytevault.app.auth.service.PrincipalCache;
 import com.bytevault.app.auth.service.TokenService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -21,30 +24,27 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Supplier;
 
 @Slf4j
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
-    private JwtUtils jwtUtils;
     private UserDetailsService userDetailsService;
     private TokenService tokenService;
+    private PrincipalCache principalCache;
     
     // 不需要验证的路径
     private final List<String> excludedPaths = Arrays.asList(
         "/api/auth/login", 
         "/auth/login",
         "/api/auth/register", 
-        "/auth/register"
+        "/auth/register",
+        "/api/auth/refresh"
     );
     
     private final AntPathMatcher pathMatcher = new AntPathMatcher();
 
-    @Autowired
-    public void setJwtUtils(JwtUtils jwtUtils) {
-        this.jwtUtils = jwtUtils;
-    }
-
     @Autowired
     public void setUserDetailsService(UserDetailsService userDetailsService) {
         this.userDetailsService = userDetailsService;
@@ -55,6 +55,11 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         this.tokenService = tokenService;
     }
     
+    @Autowired
+    public void setPrincipalCache(PrincipalCache principalCache) {
+        this.principalCache = principalCache;
+    }
+    
     @Override
     protected boolean shouldNotFilter(HttpServletRequest request) throws ServletException {
         String path = request.getRequestURI();
@@ -76,12 +81,21 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             log.debug("处理请求: {} {}, JWT: {}", request.getMethod(), request.getRequestURI(), jwt != null ? "存在" : "不存在");
             
             if (jwt != null) {
-                // 使用TokenService验证令牌
-                if (tokenService.validateToken(jwt)) {
-                    String username = jwtUtils.extractUsername(jwt);
+                // 使用TokenService验证令牌，令牌只解析一次，后续从验证结果中读取声明
+                VerifiedToken verified = tokenService.verifyToken(jwt);
+                if (verified != null) {
+                    request.setAttribute(VerifiedToken.REQUEST_ATTRIBUTE, verified);
+                    String username = verified.getUsername();
+                    Long userId = verified.getUserId();
                     
-                    if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                        UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+                    if (username != null && userId != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+                        // 优先使用缓存的用户主体，避免每个请求都查询用户及角色权限
+                        // 会话校验已一并读取认证纪元时直接使用，不再单独访问Redis
+                        Supplier<UserDetailsImpl> loader =
+                                () -> (UserDetailsImpl) userDetailsService.loadUserByUsername(username);
+                        UserDetails userDetails = verified.getPrincipalEpoch() != null
+                                ? principalCache.getOrLoad(userId, verified.getPrincipalEpoch(), loader)
+                                : principalCache.getOrLoad(userId, loader);
                         
                         UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
                                 userDetails, null, userDetails.getAuthorities());
@@ -89,20 +103,6 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                         authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                         SecurityContextHolder.getContext().setAuthentication(authentication);
                         log.debug("用户 {} 认证成功", username);
-                        
-                        // 尝试刷新令牌
-                        try {
-                            String newToken = tokenService.refreshToken(jwt);
-                            if (!newToken.equals(jwt)) {
-                                // 如果令牌已更新，在响应头中返回新令牌
-                                response.setHeader("Authorization", "Bearer " + newToken);
-                                response.setHeader("Access-Control-Expose-Headers", "Authorization");
-                                log.debug("令牌已刷新");
-                            }
-                        } catch (Exception e) {
-                            log.warn("令牌刷新失败", e);
-                            // 令牌刷新失败不影响请求处理
-                        }
                     }
                 } else {
                     log.debug("令牌验证失败");
@@ -1,7 +1,9 @@
 package com.bytevault.app.auth.config;
 
+import com.bytevault.app.auth.model.VerifiedToken;
 import com.bytevault.app.model.User;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
@@ -13,6 +15,8 @@ import org.springframework.stereotype.Component;
 import javax.annotation.PostConstruct;
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -25,14 +29,44 @@ public class JwtUtils {
     @Value("${jwt.secret:bytevaultDefaultSecretKey123456789012345678901234567890}")
     private String secret;
 
-    @Value("${jwt.expiration:86400}")
-    private long expiration; // 默认24小时，单位秒
+    @Value("${jwt.expiration:1800}")
+    private long expiration; // 访问令牌有效期，默认30分钟，单位秒
 
     private SecretKey key;
 
+    // 解析器线程安全，初始化时构建一次
+    private JwtParser parser;
+
+    private final SecureRandom random = new SecureRandom();
+
     @PostConstruct
     public void init() {
         this.key = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(key)
+                .build();
+    }
+
+    /**
+     * 验证token签名及有效期并一次性提取声明
+     * @return 验证通过的令牌，签名无效、格式错误或已过期时返回null
+     */
+    public VerifiedToken verify(String token) {
+        try {
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            Object id = claims.get("id");
+            Object epoch = claims.get("ep");
+            return new VerifiedToken(token,
+                    claims.getId(),
+                    id != null ? Long.valueOf(id.toString()) : null,
+                    claims.getSubject(),
+                    claims.getIssuedAt(),
+                    claims.getExpiration(),
+                    epoch != null ? Long.parseLong(epoch.toString()) : 0);
+        } catch (Exception e) {
+            log.debug("JWT验证失败: {}", e.getMessage());
+            return null;
+        }
     }
 
     /**
@@ -61,11 +95,7 @@ public class JwtUtils {
      * 从token中提取所有声明
      */
     private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parser.parseClaimsJws(token).getBody();
     }
 
     /**
@@ -76,23 +106,56 @@ public class JwtUtils {
     }
 
     /**
-     * 为用户生成token
+     * 获取访问令牌有效期（秒）
+     */
+    public long getExpirationSeconds() {
+        return expiration;
+    }
+
+    /**
+     * 为用户生成token，附带随机生成的令牌ID
      */
     public String generateToken(User user) {
+        return generateToken(user, newTokenId());
+    }
+
+    /**
+     * 为用户生成指定令牌ID（jti）的token
+     */
+    public String generateToken(User user, String tokenId) {
+        return generateToken(user, tokenId, 0);
+    }
+
+    /**
+     * 为用户生成指定令牌ID（jti）及撤销纪元（ep）的token
+     */
+    public String generateToken(User user, String tokenId, long epoch) {
         Map<String, Object> claims = new HashMap<>();
         claims.put("id", user.getId());
+        if (epoch > 0) {
+            claims.put("ep", epoch);
+        }
         // 可以添加其他用户相关信息，如角色等
-        claims.put("created", new Date());
 
-        return createToken(claims, user.getUsername());
+        return createToken(claims, user.getUsername(), tokenId);
+    }
+
+    /**
+     * 生成紧凑的随机令牌ID：128位随机数的URL安全Base64编码（22个字符）
+     */
+    public String newTokenId() {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
     }
 
     /**
      * 创建token
      */
-    private String createToken(Map<String, Object> claims, String subject) {
+    private String createToken(Map<String, Object> claims, String subject, String tokenId) {
         return Jwts.builder()
                 .setClaims(claims)
+                .setId(tokenId)
                 .setSubject(subject)
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + expiration * 1000))
@@ -124,19 +187,8 @@ public class JwtUtils {
      * 验证token是否有效（不需要UserDetails）
      */
     public Boolean validateToken(String token) {
-        try {
-            // 验证token格式和签名
-            Jwts.parserBuilder()
-                    .setSigningKey(key)
-                    .build()
-                    .parseClaimsJws(token);
-            
-            // 检查是否过期
-            return !isTokenExpired(token);
-        } catch (Exception e) {
-            log.error("JWT验证失败", e);
-            return false;
-        }
+        // 解析时同时校验格式、签名和过期时间
+        return verify(token) != null;
     }
 
     /**
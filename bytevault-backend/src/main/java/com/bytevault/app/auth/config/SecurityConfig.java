@@ -1,6 +1,7 @@
 package com.bytevault.app.auth.config;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -29,9 +30,18 @@ import java.util.Arrays;
 )
 public class SecurityConfig {
 
+    /**
+     * 密码编码器，哈希计算在有界线程池中执行
+     * 线程数为0时取CPU核心数的一半
+     */
     @Bean
-    public BCryptPasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public BCryptPasswordEncoder passwordEncoder(@Value("${auth.bcrypt.threads:0}") int threads,
+                                                 @Value("${auth.bcrypt.queueCapacity:64}") int queueCapacity,
+                                                 @Value("${auth.bcrypt.timeoutMillis:5000}") long timeoutMillis) {
+        if (threads <= 0) {
+            threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        }
+        return new BoundedBCryptPasswordEncoder(threads, queueCapacity, timeoutMillis);
     }
 
     @Bean
@@ -51,16 +61,19 @@ public class SecurityConfig {
             // 配置请求授权规则
             .authorizeRequests(authorize -> authorize
                 // 允许所有人访问登录和注册接口
-                .antMatchers("/api/auth/login", "/api/auth/register").permitAll()
+                .antMatchers("/api/auth/login", "/api/auth/register", "/api/auth/refresh").permitAll()
                 .antMatchers("/auth/login", "/auth/register").permitAll()
                 
                 // 允许所有人访问公开文件代理接口
                 .antMatchers("/api/files/proxy/**").permitAll()
                 
                 // 允许所有人访问公开文件列表接口
-                .antMatchers("/api/files/public").permitAll()
+                .antMatchers("/api/files/public", "/api/files/public/cursor").permitAll()
                 .antMatchers("/files/public").permitAll()
                 
+                // 允许所有人获取缩略图（公开文件），权限在接口内校验
+                .antMatchers(HttpMethod.GET, "/api/files/*/thumb").permitAll()
+                
                 // 静态资源不需要认证
                 .antMatchers(
                     "/",
@@ -2,10 +2,14 @@ package com.bytevault.app.auth.controller;
 
 import com.bytevault.app.auth.model.LoginRequest;
 import com.bytevault.app.auth.model.LoginResponse;
+import com.bytevault.app.auth.model.RefreshRequest;
 import com.bytevault.app.auth.model.RegisterRequest;
+import com.bytevault.app.auth.model.TokenPair;
 import com.bytevault.app.auth.service.AuthService;
+import com.bytevault.app.auth.service.TooManyAttemptsException;
 import com.bytevault.app.model.User;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
@@ -32,6 +36,8 @@ public class AuthController {
             LoginResponse response = authService.login(loginRequest.getUsername(), loginRequest.getPassword());
             log.info("登录成功: {}", loginRequest.getUsername());
             return ResponseEntity.ok(response);
+        } catch (TooManyAttemptsException e) {
+            return tooManyAttempts(e);
         } catch (Exception e) {
             log.error("登录失败: {}", e.getMessage(), e);
             Map<String, String> error = new HashMap<>();
@@ -40,6 +46,23 @@ public class AuthController {
         }
     }
     
+    /**
+     * 使用刷新令牌换取新的访问令牌，同时延长服务端会话有效期
+     * 刷新失败返回401，客户端需要重新登录
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh(@Validated @RequestBody RefreshRequest refreshRequest) {
+        try {
+            TokenPair tokens = authService.refresh(refreshRequest.getRefreshToken());
+            return ResponseEntity.ok(tokens);
+        } catch (Exception e) {
+            log.warn("刷新令牌失败: {}", e.getMessage());
+            Map<String, String> error = new HashMap<>();
+            error.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
+        }
+    }
+    
     @PostMapping("/register")
     public ResponseEntity<?> register(@Validated @RequestBody RegisterRequest registerRequest) {
         try {
@@ -52,6 +75,8 @@ public class AuthController {
             
             log.info("注册成功: {}", user.getUsername());
             return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        } catch (TooManyAttemptsException e) {
+            return tooManyAttempts(e);
         } catch (Exception e) {
             log.error("注册失败: {}", e.getMessage(), e);
             Map<String, String> error = new HashMap<>();
@@ -87,4 +112,15 @@ public class AuthController {
             return ResponseEntity.badRequest().body(error);
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * 请求过于频繁时返回429及建议的重试等待时间
+     */
+    private ResponseEntity<?> tooManyAttempts(TooManyAttemptsException e) {
+        Map<String, String> error = new HashMap<>();
+        error.put("message", e.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(error);
+    }
+}
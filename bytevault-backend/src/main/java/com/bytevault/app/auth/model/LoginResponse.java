@@ -12,5 +12,8 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 public class LoginResponse {
     private String token;
+    private String refreshToken;
+    // 访问令牌有效期（秒）
+    private long expiresIn;
     private User user;
 }
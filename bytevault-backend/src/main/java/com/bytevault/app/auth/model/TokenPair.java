@@ -0,0 +1,26 @@
+package com.bytevault.app.auth.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 访问令牌与刷新令牌
+ * 访问令牌为短期JWT，过期后客户端使用刷新令牌换取新的访问令牌，同时延长服务端会话有效期
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TokenPair {
+
+    // 访问令牌（JWT）
+    private String token;
+
+    // 刷新令牌，格式为 {令牌ID}.{随机密钥}
+    private String refreshToken;
+
+    // 访问令牌有效期（秒）
+    private long expiresIn;
+}
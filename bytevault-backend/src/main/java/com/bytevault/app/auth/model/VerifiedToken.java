@@ -0,0 +1,56 @@
+package com.bytevault.app.auth.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Date;
+
+/**
+ * 已验证签名的JWT及其声明
+ * 每个请求只解析和验证一次令牌，过滤器、令牌服务和控制器共享该对象，不再重复解析。
+ */
+@Getter
+@AllArgsConstructor
+public class VerifiedToken {
+
+    /**
+     * 过滤器验证通过后存放在请求属性中的名称
+     */
+    public static final String REQUEST_ATTRIBUTE = VerifiedToken.class.getName();
+
+    // 原始令牌
+    private final String token;
+
+    // 令牌ID（jti），服务端会话以此为键；升级前签发的令牌没有该声明，为null
+    private final String tokenId;
+
+    private final Long userId;
+
+    private final String username;
+
+    private final Date issuedAt;
+
+    private final Date expiration;
+
+    // 签发时用户的撤销纪元，小于用户当前纪元时令牌已被撤销
+    private final long epoch;
+
+    // 服务端会话的剩余有效期（毫秒），验证会话前为null
+    private final Long sessionTtlMillis;
+
+    // 会话校验时一并读取的用户认证纪元，供主体缓存使用；验证会话前或无状态模式下为null
+    private final Long principalEpoch;
+
+    public VerifiedToken(String token, String tokenId, Long userId, String username, Date issuedAt, Date expiration,
+                         long epoch) {
+        this(token, tokenId, userId, username, issuedAt, expiration, epoch, null, null);
+    }
+
+    /**
+     * 返回附带服务端会话剩余有效期和用户认证纪元的副本
+     */
+    public VerifiedToken withSession(long sessionTtlMillis, long principalEpoch) {
+        return new VerifiedToken(token, tokenId, userId, username, issuedAt, expiration, epoch,
+                sessionTtlMillis, principalEpoch);
+    }
+}
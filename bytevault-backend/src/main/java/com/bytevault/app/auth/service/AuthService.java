@@ -2,6 +2,7 @@ package com.bytevault.app.auth.service;
 
 import com.bytevault.app.auth.model.LoginResponse;
 import com.bytevault.app.auth.model.RegisterRequest;
+import com.bytevault.app.auth.model.TokenPair;
 import com.bytevault.app.model.User;
 
 public interface AuthService {
@@ -15,6 +16,14 @@ public interface AuthService {
      */
     LoginResponse login(String username, String password);
     
+    /**
+     * 使用刷新令牌换取新的访问令牌
+     * 
+     * @param refreshToken 刷新令牌
+     * @return 新的访问令牌及刷新令牌
+     */
+    TokenPair refresh(String refreshToken);
+    
     /**
      * 获取当前登录用户
      * 
@@ -2,12 +2,15 @@ package com.bytevault.app.auth.service;
 
 import com.bytevault.app.auth.model.LoginResponse;
 import com.bytevault.app.auth.model.RegisterRequest;
+import com.bytevault.app.auth.model.TokenPair;
 import com.bytevault.app.auth.model.UserDetailsImpl;
 import com.bytevault.app.model.User;
 import com.bytevault.app.service.UserService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -18,7 +21,9 @@ import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
 import java.util.Objects;
+import java.util.Set;
 
 @Slf4j
 @Service
@@ -28,20 +33,41 @@ public class AuthServiceImpl implements AuthService {
     private final TokenService tokenService;
     private final AuthenticationManager authenticationManager;
     private final BCryptPasswordEncoder passwordEncoder;
+    private final LoginRateLimiter loginRateLimiter;
+
+    // 已存在的用户名长度上限，超过时不可能匹配任何用户
+    private static final int MAX_USERNAME_LENGTH = 64;
+    // 密码长度上限，超长输入不参与哈希计算直接拒绝
+    private static final int MAX_PASSWORD_LENGTH = 128;
+
+    /**
+     * 受信任的反向代理地址，只有来自这些地址的请求才读取 X-Forwarded-For
+     */
+    @Value("${auth.throttle.trustedProxies:}")
+    private Set<String> trustedProxies;
 
     public AuthServiceImpl(
             UserService userService, 
             TokenService tokenService, 
             AuthenticationManager authenticationManager, 
-            BCryptPasswordEncoder passwordEncoder) {
+            BCryptPasswordEncoder passwordEncoder,
+            LoginRateLimiter loginRateLimiter) {
         this.userService = userService;
         this.tokenService = tokenService;
         this.authenticationManager = authenticationManager;
         this.passwordEncoder = passwordEncoder;
+        this.loginRateLimiter = loginRateLimiter;
     }
 
     @Override
     public LoginResponse login(String username, String password) {
+        // 在任何密码哈希计算之前拒绝明显无效和过于频繁的请求
+        if (username == null || username.isEmpty() || username.length() > MAX_USERNAME_LENGTH
+                || password == null || password.isEmpty() || password.length() > MAX_PASSWORD_LENGTH) {
+            throw new BadCredentialsException("用户名或密码错误");
+        }
+        loginRateLimiter.acquire(getClientIp(), username);
+
         try {
             // 使用Spring Security的认证管理器进行认证
             Authentication authentication = authenticationManager.authenticate(
@@ -58,19 +84,32 @@ public class AuthServiceImpl implements AuthService {
             String device = getClientDevice();
             String ip = getClientIp();
             
-            // 使用TokenService创建令牌
-            String token = tokenService.createToken(user, device, ip);
+            // 使用TokenService创建访问令牌及刷新令牌
+            TokenPair tokens = tokenService.createToken(user, device, ip);
             
             // 返回登录响应
             return LoginResponse.builder()
-                    .token(token)
+                    .token(tokens.getToken())
+                    .refreshToken(tokens.getRefreshToken())
+                    .expiresIn(tokens.getExpiresIn())
                     .user(user)
                     .build();
         } catch (BadCredentialsException e) {
             throw new BadCredentialsException("用户名或密码错误");
+        } catch (InternalAuthenticationServiceException e) {
+            // 用户不存在时的防时序攻击哈希被拒绝，异常会被包装
+            if (e.getCause() instanceof TooManyAttemptsException) {
+                throw (TooManyAttemptsException) e.getCause();
+            }
+            throw e;
         }
     }
 
+    @Override
+    public TokenPair refresh(String refreshToken) {
+        return tokenService.refreshToken(refreshToken);
+    }
+
     @Override
     public User getCurrentUser() {
         // 从安全上下文中获取当前认证信息
@@ -79,9 +118,13 @@ public class AuthServiceImpl implements AuthService {
             throw new BadCredentialsException("用户未登录或登录已过期");
         }
         
-        // 如果认证主体是UserDetailsImpl类型，直接获取用户信息
+        // 如果认证主体是UserDetailsImpl类型，返回用户信息的副本
+        // 认证主体来自主体缓存，被多个请求共享，调用方修改返回的用户不能影响缓存
         if (authentication.getPrincipal() instanceof UserDetailsImpl) {
-            return ((UserDetailsImpl) authentication.getPrincipal()).getUser();
+            User user = ((UserDetailsImpl) authentication.getPrincipal()).getUser();
+            return user.toBuilder()
+                    .roles(user.getRoles() != null ? new ArrayList<>(user.getRoles()) : null)
+                    .build();
         }
         
         // 如果是字符串类型（用户名），则通过用户名查询用户
@@ -119,6 +162,7 @@ public class AuthServiceImpl implements AuthService {
     @Transactional
     public User register(RegisterRequest registerRequest) {
         log.info("开始注册用户: {}", registerRequest.getUsername());
+        loginRateLimiter.acquire(getClientIp(), null);
         
         // 验证密码是否一致
         if (!Objects.equals(registerRequest.getPassword(), registerRequest.getConfirmPassword())) {
@@ -155,42 +199,29 @@ public class AuthServiceImpl implements AuthService {
     
     /**
      * 获取客户端IP地址
+     * 转发头可由客户端任意伪造，只有直连地址是受信任的代理时才读取 X-Forwarded-For：
+     * 从右向左跳过受信任的代理，第一个不受信任的地址即客户端地址；否则使用直连地址。
      */
     private String getClientIp() {
         HttpServletRequest request = ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes()).getRequest();
-        String ip = request.getHeader("X-Forwarded-For");
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("Proxy-Client-IP");
-        }
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("WL-Proxy-Client-IP");
-        }
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("HTTP_X_FORWARDED_FOR");
-        }
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("HTTP_X_FORWARDED");
-        }
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("HTTP_X_CLUSTER_CLIENT_IP");
-        }
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("HTTP_CLIENT_IP");
-        }
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("HTTP_FORWARDED_FOR");
-        }
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("HTTP_FORWARDED");
-        }
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("HTTP_VIA");
-        }
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("REMOTE_ADDR");
-        }
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getRemoteAddr();
+        String ip = request.getRemoteAddr();
+        if (!trustedProxies.contains(ip)) {
+            return ip;
+        }
+        String forwardedFor = request.getHeader("X-Forwarded-For");
+        if (forwardedFor == null || forwardedFor.isEmpty()) {
+            return ip;
+        }
+        String[] hops = forwardedFor.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if (hop.isEmpty() || "unknown".equalsIgnoreCase(hop)) {
+                break;
+            }
+            ip = hop;
+            if (!trustedProxies.contains(hop)) {
+                break;
+            }
         }
         return ip;
     }
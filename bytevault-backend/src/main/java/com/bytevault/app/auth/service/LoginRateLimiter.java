@@ -0,0 +1,110 @@
+package com.bytevault.app.auth.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 登录、注册限流
+ * 在Redis中按IP和用户名维护令牌桶，请求在任何密码哈希计算之前先取令牌，桶空时直接拒绝。
+ * 多个桶在一次脚本调用中原子检查：全部有令牌才同时扣减，任一为空则都不扣减并返回需要等待的时间。
+ * Redis不可用时放行，限流不影响正常登录。
+ */
+@Slf4j
+@Component
+public class LoginRateLimiter {
+
+    // Redis键前缀
+    private static final String IP_KEY_PREFIX = "rate:login:ip:";
+    private static final String USER_KEY_PREFIX = "rate:login:user:";
+
+    /**
+     * 令牌桶脚本，每个桶对应 KEYS[i] 及 ARGV 中的 (容量, 每毫秒补充的令牌数)，ARGV[1]=当前时间(毫秒)
+     * 返回0表示放行，否则返回需要等待的毫秒数
+     */
+    private static final RedisScript<Long> TOKEN_BUCKET_SCRIPT = new DefaultRedisScript<>(
+            "local now = tonumber(ARGV[1]) " +
+            "local tokens = {} " +
+            "local wait = 0 " +
+            "for i, key in ipairs(KEYS) do " +
+            "  local capacity = tonumber(ARGV[i * 2]) " +
+            "  local rate = tonumber(ARGV[i * 2 + 1]) " +
+            "  local state = redis.call('HMGET', key, 'tokens', 'ts') " +
+            "  local current = tonumber(state[1]) or capacity " +
+            "  local ts = tonumber(state[2]) or now " +
+            "  current = math.min(capacity, current + math.max(0, now - ts) * rate) " +
+            "  tokens[i] = current " +
+            "  if current < 1 then wait = math.max(wait, math.ceil((1 - current) / rate)) end " +
+            "end " +
+            "for i, key in ipairs(KEYS) do " +
+            "  local capacity = tonumber(ARGV[i * 2]) " +
+            "  local rate = tonumber(ARGV[i * 2 + 1]) " +
+            "  local current = tokens[i] " +
+            "  if wait == 0 then current = current - 1 end " +
+            "  redis.call('HSET', key, 'tokens', current, 'ts', now) " +
+            "  redis.call('PEXPIRE', key, math.ceil((capacity - current) / rate) + 1000) " +
+            "end " +
+            "return wait",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // 每个IP的桶容量及每分钟补充的令牌数
+    @Value("${auth.throttle.ipCapacity:30}")
+    private int ipCapacity;
+
+    @Value("${auth.throttle.ipPerMinute:30}")
+    private int ipPerMinute;
+
+    // 每个用户名的桶容量及每分钟补充的令牌数
+    @Value("${auth.throttle.userCapacity:10}")
+    private int userCapacity;
+
+    @Value("${auth.throttle.userPerMinute:5}")
+    private int userPerMinute;
+
+    public LoginRateLimiter(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 为一次登录或注册尝试取令牌，桶空时抛出 {@link TooManyAttemptsException}
+     * @param ip 客户端IP
+     * @param username 用户名，为null时只检查IP
+     */
+    public void acquire(String ip, String username) {
+        List<String> keys = new ArrayList<>(2);
+        List<String> args = new ArrayList<>(5);
+        args.add(String.valueOf(System.currentTimeMillis()));
+        keys.add(IP_KEY_PREFIX + ip);
+        addBucket(args, ipCapacity, ipPerMinute);
+        if (username != null) {
+            keys.add(USER_KEY_PREFIX + username.toLowerCase(Locale.ROOT));
+            addBucket(args, userCapacity, userPerMinute);
+        }
+
+        Long waitMillis;
+        try {
+            waitMillis = stringRedisTemplate.execute(TOKEN_BUCKET_SCRIPT, keys, args.toArray());
+        } catch (Exception e) {
+            log.warn("登录限流检查失败，放行请求: {}", e.getMessage());
+            return;
+        }
+        if (waitMillis != null && waitMillis > 0) {
+            log.warn("登录尝试过于频繁: ip={}, username={}", ip, username);
+            throw new TooManyAttemptsException("尝试次数过多，请稍后重试", (waitMillis + 999) / 1000);
+        }
+    }
+
+    private void addBucket(List<String> args, int capacity, int perMinute) {
+        args.add(String.valueOf(capacity));
+        args.add(String.valueOf(perMinute / 60000.0));
+    }
+}
@@ -0,0 +1,176 @@
+package com.bytevault.app.auth.service;
+
+import com.bytevault.app.auth.model.UserDetailsImpl;
+import com.bytevault.app.service.RoleGraphCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 已认证用户主体缓存
+ * 按用户ID缓存 UserDetails，避免每个请求都查询用户、背景图片和角色。
+ * 每个用户在Redis中有一个认证纪元，封禁、角色变更、资料修改时递增；缓存条目记录加载时的纪元
+ * 和角色权限快照代数，两者任一变化即重新加载，因此多节点之间无需广播即可感知失效。
+ * 无状态校验模式下纪元改由 {@link RevocationEpochCache} 通过发布订阅复制到本地，读取时不访问Redis。
+ */
+@Slf4j
+@Component
+public class PrincipalCache {
+
+    // Redis键前缀
+    private static final String EPOCH_KEY_PREFIX = "auth:epoch:";
+
+    // 缓存条目的最长存活时间（5分钟），兜底处理未经过失效接口的数据变更
+    private static final long ENTRY_TTL_MILLIS = 5 * 60 * 1000;
+    // 缓存条目上限，超过后先清理过期条目，仍超过则整体清空
+    private static final int MAX_ENTRIES = 50_000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RoleGraphCache roleGraphCache;
+    private final RevocationEpochCache revocationEpochCache;
+    private final ConcurrentHashMap<Long, CachedPrincipal> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 是否启用无状态校验模式
+     */
+    @Value("${jwt.stateless:false}")
+    private boolean stateless;
+
+    public PrincipalCache(StringRedisTemplate stringRedisTemplate, RoleGraphCache roleGraphCache,
+                          RevocationEpochCache revocationEpochCache) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.roleGraphCache = roleGraphCache;
+        this.revocationEpochCache = revocationEpochCache;
+    }
+
+    /**
+     * 获取用户主体，缓存未命中或已失效时通过 loader 加载
+     * 无法读取认证纪元时不使用缓存，直接加载
+     * @param userId 用户ID
+     * @param loader 从数据库加载用户主体的回调
+     * @return 用户主体
+     */
+    public UserDetailsImpl getOrLoad(Long userId, Supplier<UserDetailsImpl> loader) {
+        long epoch;
+        try {
+            epoch = readEpoch(userId);
+        } catch (Exception e) {
+            log.warn("读取认证纪元失败，跳过主体缓存: 用户ID={}, {}", userId, e.getMessage());
+            return loader.get();
+        }
+        return getOrLoad(userId, epoch, loader);
+    }
+
+    /**
+     * 使用调用方已读取的认证纪元获取用户主体，不再单独访问Redis
+     * 令牌校验脚本在同一次往返中返回纪元，过滤器据此调用本方法
+     * @param userId 用户ID
+     * @param epoch 用户当前的认证纪元
+     * @param loader 从数据库加载用户主体的回调
+     * @return 用户主体
+     */
+    public UserDetailsImpl getOrLoad(Long userId, long epoch, Supplier<UserDetailsImpl> loader) {
+        long generation = roleGraphCache.getGeneration();
+        long now = System.currentTimeMillis();
+
+        CachedPrincipal cached = cache.get(userId);
+        if (cached != null && cached.epoch == epoch && cached.generation == generation && cached.expiresAt > now) {
+            return cached.principal;
+        }
+
+        // 纪元在加载之前读取，加载期间发生的失效会使本次写入的条目在下次读取时失配
+        UserDetailsImpl principal = loader.get();
+        if (cache.size() >= MAX_ENTRIES) {
+            evictExpired();
+            if (cache.size() >= MAX_ENTRIES) {
+                cache.clear();
+            }
+        }
+        cache.put(userId, new CachedPrincipal(principal, epoch, generation, now + ENTRY_TTL_MILLIS));
+        return principal;
+    }
+
+    /**
+     * 用户认证纪元在Redis中的键，令牌校验脚本与本类共用
+     * @param userId 用户ID
+     * @return Redis键
+     */
+    public static String epochKey(Long userId) {
+        return EPOCH_KEY_PREFIX + userId;
+    }
+
+    /**
+     * 使用户的缓存主体在所有节点失效（封禁、角色变更、资料修改时调用）
+     * 在事务中调用时推迟到事务提交后执行，避免重新加载到提交前的数据
+     * @param userId 用户ID
+     */
+    public void invalidate(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bumpEpoch(userId);
+                }
+            });
+        } else {
+            bumpEpoch(userId);
+        }
+    }
+
+    /**
+     * 定时清理过期的缓存条目
+     * 每5分钟执行一次
+     */
+    @Scheduled(fixedRate = 5 * 60 * 1000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        int before = cache.size();
+        cache.entrySet().removeIf(entry -> entry.getValue().expiresAt <= now);
+        log.debug("清理用户主体缓存: {} -> {}", before, cache.size());
+    }
+
+    private void bumpEpoch(Long userId) {
+        cache.remove(userId);
+        try {
+            if (stateless) {
+                revocationEpochCache.bumpPrincipal(userId);
+            } else {
+                stringRedisTemplate.opsForValue().increment(epochKey(userId));
+            }
+        } catch (Exception e) {
+            log.error("递增认证纪元失败: 用户ID={}, {}", userId, e.getMessage(), e);
+        }
+    }
+
+    private long readEpoch(Long userId) {
+        if (stateless) {
+            return revocationEpochCache.principalEpoch(userId);
+        }
+        String epoch = stringRedisTemplate.opsForValue().get(epochKey(userId));
+        return epoch != null ? Long.parseLong(epoch) : 0;
+    }
+
+    private static class CachedPrincipal {
+        private final UserDetailsImpl principal;
+        private final long epoch;
+        private final long generation;
+        private final long expiresAt;
+
+        CachedPrincipal(UserDetailsImpl principal, long epoch, long generation, long expiresAt) {
+            this.principal = principal;
+            this.epoch = epoch;
+            this.generation = generation;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
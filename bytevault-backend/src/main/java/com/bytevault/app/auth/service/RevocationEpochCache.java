@@ -0,0 +1,239 @@
+package com.bytevault.app.auth.service;
+
+import com.bytevault.app.auth.config.JwtUtils;
+import com.bytevault.app.service.LeaderLease;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 用户令牌撤销纪元
+ * 撤销用户的全部令牌（封禁、使全部令牌失效）时记录撤销时间作为纪元，令牌签发时携带当时的纪元（ep声明），
+ * 纪元小于用户当前纪元的令牌视为已撤销。纪元保存在Redis哈希中，通过发布订阅复制到各节点的本地映射，
+ * 无状态校验模式下每个请求只读本地映射，不访问Redis；另有定时任务全量同步，防止漏收通知。
+ * 纪元为撤销时的毫秒时间戳，早于访问令牌最长有效期的纪元不再影响任何有效令牌，同步时清理。
+ * 同一机制还维护用户主体纪元（哈希字段为 p:{用户ID}），用户资料、角色变更时递增，
+ * 无状态模式下主体缓存据此判断是否需要重新加载，请求路径同样不访问Redis。
+ */
+@Slf4j
+@Component
+public class RevocationEpochCache implements MessageListener {
+
+    // Redis键及频道
+    private static final String EPOCHS_KEY = "auth:revocations";
+    private static final String CHANNEL = "auth:revoked";
+    // 用户主体纪元的哈希字段及通知前缀
+    private static final String PRINCIPAL_PREFIX = "p:";
+
+    // 清理过期纪元时额外保留的时间（毫秒），容忍节点之间的时钟偏差
+    private static final long CLOCK_SKEW_MILLIS = 60 * 1000;
+
+    // 清理过期纪元的任务名及租约有效期
+    private static final String PRUNE_JOB = "revocation-prune";
+    private static final Duration PRUNE_LEASE_TTL = Duration.ofMinutes(5);
+
+    /**
+     * 记录纪元并通知所有节点，保证同一字段的纪元单调递增
+     * KEYS[1]=纪元哈希 ARGV[1]=哈希字段（用户ID或 p:{用户ID}） ARGV[2]=当前时间 ARGV[3]=频道
+     */
+    private static final RedisScript<Long> REVOKE_SCRIPT = new DefaultRedisScript<>(
+            "local prev = tonumber(redis.call('HGET', KEYS[1], ARGV[1]) or '0') " +
+            "local epoch = tonumber(ARGV[2]) " +
+            "if epoch <= prev then epoch = prev + 1 end " +
+            "redis.call('HSET', KEYS[1], ARGV[1], epoch) " +
+            "redis.call('PUBLISH', ARGV[3], ARGV[1] .. ':' .. epoch) " +
+            "return epoch",
+            Long.class);
+
+    /**
+     * 清理过期纪元，只删除值未变化的字段，读取后又被重新撤销的用户不受影响
+     * KEYS[1]=纪元哈希 ARGV=字段1, 纪元1, 字段2, 纪元2, ...
+     */
+    private static final RedisScript<Long> PRUNE_SCRIPT = new DefaultRedisScript<>(
+            "local removed = 0 " +
+            "for i = 1, #ARGV, 2 do " +
+            "  if redis.call('HGET', KEYS[1], ARGV[i]) == ARGV[i + 1] then " +
+            "    redis.call('HDEL', KEYS[1], ARGV[i]) " +
+            "    removed = removed + 1 " +
+            "  end " +
+            "end " +
+            "return removed",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final JwtUtils jwtUtils;
+    private final LeaderLease leaderLease;
+
+    /**
+     * 是否启用无状态校验模式，未启用时不需要定时同步本地映射
+     */
+    @Value("${jwt.stateless:false}")
+    private boolean stateless;
+
+    /**
+     * 用户ID -> 撤销纪元
+     */
+    private volatile Map<Long, Long> epochs = new ConcurrentHashMap<>();
+
+    /**
+     * 用户ID -> 用户主体纪元
+     */
+    private volatile Map<Long, Long> principalEpochs = new ConcurrentHashMap<>();
+
+    public RevocationEpochCache(StringRedisTemplate stringRedisTemplate, JwtUtils jwtUtils, LeaderLease leaderLease,
+                                RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.jwtUtils = jwtUtils;
+        this.leaderLease = leaderLease;
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * 令牌是否已被撤销，只读本地映射
+     * @param userId 用户ID
+     * @param tokenEpoch 令牌签发时携带的纪元
+     */
+    public boolean isRevoked(Long userId, long tokenEpoch) {
+        Long epoch = epochs.get(userId);
+        return epoch != null && tokenEpoch < epoch;
+    }
+
+    /**
+     * 用户主体的本地纪元，未变更过时返回0，只读本地映射
+     */
+    public long principalEpoch(Long userId) {
+        Long epoch = principalEpochs.get(userId);
+        return epoch != null ? epoch : 0;
+    }
+
+    /**
+     * 递增用户主体纪元并通知所有节点，用户资料或角色变更后调用
+     * @param userId 用户ID
+     */
+    public void bumpPrincipal(Long userId) {
+        Long epoch = stringRedisTemplate.execute(REVOKE_SCRIPT, Collections.singletonList(EPOCHS_KEY),
+                PRINCIPAL_PREFIX + userId, String.valueOf(System.currentTimeMillis()), CHANNEL);
+        if (epoch != null) {
+            principalEpochs.merge(userId, epoch, Math::max);
+        }
+    }
+
+    /**
+     * 从Redis读取用户当前的撤销纪元，签发令牌时调用
+     * 读取失败时返回0，令牌仍可签发，只是在纪元同步前不受之前的撤销影响
+     */
+    public long currentEpoch(Long userId) {
+        try {
+            Object epoch = stringRedisTemplate.opsForHash().get(EPOCHS_KEY, String.valueOf(userId));
+            return epoch != null ? Long.parseLong(epoch.toString()) : 0;
+        } catch (Exception e) {
+            log.warn("读取撤销纪元失败: 用户ID={}, {}", userId, e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * 撤销用户此前签发的全部令牌
+     * @param userId 用户ID
+     */
+    public void revoke(Long userId) {
+        Long epoch = stringRedisTemplate.execute(REVOKE_SCRIPT, Collections.singletonList(EPOCHS_KEY),
+                String.valueOf(userId), String.valueOf(System.currentTimeMillis()), CHANNEL);
+        if (epoch != null) {
+            epochs.merge(userId, epoch, Math::max);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.lastIndexOf(':');
+        if (separator <= 0) {
+            return;
+        }
+        try {
+            String field = body.substring(0, separator);
+            long epoch = Long.parseLong(body.substring(separator + 1));
+            if (field.startsWith(PRINCIPAL_PREFIX)) {
+                principalEpochs.merge(Long.valueOf(field.substring(PRINCIPAL_PREFIX.length())), epoch, Math::max);
+            } else {
+                epochs.merge(Long.valueOf(field), epoch, Math::max);
+            }
+        } catch (NumberFormatException e) {
+            log.warn("无法解析令牌撤销通知: {}", body);
+        }
+    }
+
+    /**
+     * 定时从Redis全量同步撤销纪元，兜底处理漏收的通知，并清理不再影响有效令牌的纪元
+     */
+    @Scheduled(fixedRate = 60 * 1000, initialDelay = 0)
+    public void sync() {
+        if (!stateless) {
+            return;
+        }
+        // 纪元早于访问令牌最长有效期时，此前签发的令牌均已过期
+        long now = System.currentTimeMillis();
+        long expireBefore = now - jwtUtils.getExpirationSeconds() * 1000 - CLOCK_SKEW_MILLIS;
+        try {
+            Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(EPOCHS_KEY);
+            Map<Long, Long> synced = new ConcurrentHashMap<>();
+            Map<Long, Long> syncedPrincipals = new ConcurrentHashMap<>();
+            // 过期的字段及其纪元，依次成对存放
+            List<String> expired = new ArrayList<>();
+            entries.forEach((field, value) -> {
+                String name = field.toString();
+                long epoch = Long.parseLong(value.toString());
+                if (epoch >= expireBefore) {
+                    if (name.startsWith(PRINCIPAL_PREFIX)) {
+                        syncedPrincipals.put(Long.valueOf(name.substring(PRINCIPAL_PREFIX.length())), epoch);
+                    } else {
+                        synced.put(Long.valueOf(name), epoch);
+                    }
+                } else if (epoch < expireBefore - CLOCK_SKEW_MILLIS) {
+                    expired.add(name);
+                    expired.add(value.toString());
+                }
+            });
+            // 先替换映射再合并旧映射，同步期间收到的通知不会丢失
+            Map<Long, Long> previous = epochs;
+            epochs = synced;
+            mergeUnexpired(previous, synced, expireBefore);
+            // 主体纪元清理后读取为0，与缓存条目的纪元不一致时只会多重新加载一次
+            Map<Long, Long> previousPrincipals = principalEpochs;
+            principalEpochs = syncedPrincipals;
+            mergeUnexpired(previousPrincipals, syncedPrincipals, expireBefore);
+            // 清理Redis中的过期纪元只需一个节点执行；租约不对写入加栅栏，按值条件删除保证重复执行无害
+            if (!expired.isEmpty() && leaderLease.tryAcquire(PRUNE_JOB, PRUNE_LEASE_TTL) > 0) {
+                stringRedisTemplate.execute(PRUNE_SCRIPT, Collections.singletonList(EPOCHS_KEY), expired.toArray());
+            }
+            log.debug("同步令牌撤销纪元: {} 个用户，清理 {} 个过期纪元", synced.size(), expired.size() / 2);
+        } catch (Exception e) {
+            log.warn("同步令牌撤销纪元失败，继续使用本地数据: {}", e.getMessage());
+        }
+    }
+
+    private static void mergeUnexpired(Map<Long, Long> from, Map<Long, Long> to, long expireBefore) {
+        from.forEach((userId, epoch) -> {
+            if (epoch >= expireBefore) {
+                to.merge(userId, epoch, Math::max);
+            }
+        });
+    }
+}
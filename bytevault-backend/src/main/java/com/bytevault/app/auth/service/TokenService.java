@@ -1,5 +1,7 @@
 package com.bytevault.app.auth.service;
 
+import com.bytevault.app.auth.model.TokenPair;
+import com.bytevault.app.auth.model.VerifiedToken;
 import com.bytevault.app.model.User;
 
 /**
@@ -13,9 +15,9 @@ public interface TokenService {
      * @param user 用户
      * @param device 设备信息
      * @param ip IP地址
-     * @return 令牌
+     * @return 访问令牌及刷新令牌
      */
-    String createToken(User user, String device, String ip);
+    TokenPair createToken(User user, String device, String ip);
 
     /**
      * 验证令牌
@@ -26,12 +28,21 @@ public interface TokenService {
     boolean validateToken(String token);
 
     /**
-     * 刷新令牌
+     * 验证令牌（签名、有效期、封禁状态及登录状态），令牌只解析一次
      *
-     * @param token 原令牌
-     * @return 新令牌
+     * @param token 令牌
+     * @return 验证通过的令牌及其声明，无效时返回null
+     */
+    VerifiedToken verifyToken(String token);
+
+    /**
+     * 使用刷新令牌换取新的访问令牌，并延长服务端会话有效期
+     * 刷新令牌不轮换，并发刷新互不影响
+     *
+     * @param refreshToken 刷新令牌
+     * @return 新的访问令牌及原刷新令牌
      */
-    String refreshToken(String token);
+    TokenPair refreshToken(String refreshToken);
 
     /**
      * 使令牌失效
@@ -1,172 +1,308 @@
 package com.bytevault.app.auth.service;
 
 import com.bytevault.app.auth.config.JwtUtils;
+import com.bytevault.app.auth.model.TokenPair;
+import com.bytevault.app.auth.model.VerifiedToken;
 import com.bytevault.app.model.User;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.bytevault.app.service.LeaderLease;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
 public class TokenServiceImpl implements TokenService {
 
     private static final String BAN_USER_KEY_PREFIX = "ban:user:";
+    // 会话信息（哈希，字段为 userId/username/device/ip/refresh），以令牌ID为键
+    private static final String LOGIN_SESSION_KEY_PREFIX = "login:session:";
+    // 旧版令牌信息（JSON字符串），以完整令牌为键，仅用于升级前签发且尚未过期的令牌
     private static final String LOGIN_TOKEN_KEY_PREFIX = "login:token:";
-    private static final String LOGIN_USER_TOKENS_KEY_PREFIX = "login:user:tokens:";
-    
-    // JWT默认有效期为1天（毫秒）
-    private static final long JWT_EXPIRATION_TIME = 24 * 60 * 60 * 1000;
-    // 自动续期阈值为30分钟（毫秒）
-    private static final long JWT_REFRESH_THRESHOLD = 30 * 60 * 1000;
+    // 用户会话索引（有序集合，成员为令牌ID，旧版令牌为完整令牌，分值为过期时间戳）
+    private static final String LOGIN_USER_SESSIONS_KEY_PREFIX = "login:user:sessions:";
+    // 旧版用户令牌集合（无序集合），由定时任务迁移到会话索引
+    private static final String LEGACY_USER_TOKENS_KEY_PREFIX = "login:user:tokens:";
+
+    // 未封禁近端缓存的条目上限，超过后整体清空
+    private static final int MAX_BAN_CACHE_ENTRIES = 100_000;
+    // 定时清理时每批扫描和处理的键数量
+    private static final int SCAN_BATCH_SIZE = 500;
+    // 过期令牌清理任务名及租约有效期（大于任务周期，同一节点连续持有）
+    private static final String CLEANUP_JOB = "token-cleanup";
+    private static final Duration CLEANUP_LEASE_TTL = Duration.ofMinutes(90);
+
+    /**
+     * 一次往返完成会话校验：返回 {会话是否存在, 是否被封禁, 会话剩余有效期(毫秒), 用户认证纪元}
+     * KEYS[1]=会话键 KEYS[2]=封禁键 KEYS[3]=认证纪元键 ARGV[1]=是否检查封禁（本地已确认未封禁时为0）
+     */
+    private static final RedisScript<List> VALIDATE_SCRIPT = new DefaultRedisScript<>(
+            "local session = redis.call('EXISTS', KEYS[1]) " +
+            "local banned = 0 " +
+            "if ARGV[1] == '1' then banned = redis.call('EXISTS', KEYS[2]) end " +
+            "local ttl = redis.call('PTTL', KEYS[1]) " +
+            "local epoch = tonumber(redis.call('GET', KEYS[3]) or '0') " +
+            "return {session, banned, ttl, epoch}",
+            List.class);
 
     private final RedisTemplate<String, Object> redisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
     private final JwtUtils jwtUtils;
-    private final ObjectMapper objectMapper;
+    private final PrincipalCache principalCache;
+    private final RevocationEpochCache revocationEpochCache;
+    private final LeaderLease leaderLease;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * 服务端会话的滑动有效期（秒），每次使用刷新令牌换取访问令牌时重新计时
+     */
+    @Value("${jwt.refreshExpiration:604800}")
+    private long refreshExpiration;
+
+    /**
+     * 无状态校验模式：只校验签名、有效期和本地的撤销纪元，请求路径不访问Redis
+     * 单个令牌登出后，其访问令牌在过期前仍然有效（刷新令牌立即失效）
+     */
+    @Value("${jwt.stateless:false}")
+    private boolean stateless;
+
+    /**
+     * 未封禁结果的近端缓存有效期（毫秒），为0时不缓存
+     * 封禁时会同时删除用户的全部会话，因此短暂使用本地的未封禁结果不会放行被封禁用户的令牌
+     */
+    @Value("${jwt.banNearCacheSeconds:5}")
+    private long banNearCacheSeconds;
 
-    public TokenServiceImpl(RedisTemplate<String, Object> redisTemplate, JwtUtils jwtUtils, ObjectMapper objectMapper) {
+    /**
+     * 用户ID -> 确认未封禁的截止时间
+     */
+    private final ConcurrentHashMap<Long, Long> notBannedUntil = new ConcurrentHashMap<>();
+
+    public TokenServiceImpl(RedisTemplate<String, Object> redisTemplate, StringRedisTemplate stringRedisTemplate,
+                            JwtUtils jwtUtils, PrincipalCache principalCache,
+                            RevocationEpochCache revocationEpochCache, LeaderLease leaderLease) {
         this.redisTemplate = redisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
         this.jwtUtils = jwtUtils;
-        this.objectMapper = objectMapper;
+        this.principalCache = principalCache;
+        this.revocationEpochCache = revocationEpochCache;
+        this.leaderLease = leaderLease;
     }
 
     @Override
-    public String createToken(User user, String device, String ip) {
+    public TokenPair createToken(User user, String device, String ip) {
         // 检查用户是否被封禁
         String banInfo = getUserBanInfo(user.getId());
         if (banInfo != null) {
             throw new RuntimeException("用户已被封禁: " + banInfo);
         }
 
-        // 创建JWT令牌
-        String token = jwtUtils.generateToken(user);
+        // 创建JWT令牌及刷新令牌
+        String tokenId = jwtUtils.newTokenId();
+        String token = jwtUtils.generateToken(user, tokenId, revocationEpochCache.currentEpoch(user.getId()));
+        String refreshSecret = newRefreshSecret();
 
-        // 存储令牌信息到Redis
-        saveTokenInfo(token, user.getId(), device, ip);
+        // 存储会话信息到Redis
+        saveSession(tokenId, user, device, ip, refreshSecret);
 
-        return token;
+        return TokenPair.builder()
+                .token(token)
+                .refreshToken(tokenId + "." + refreshSecret)
+                .expiresIn(jwtUtils.getExpirationSeconds())
+                .build();
     }
 
     @Override
     public boolean validateToken(String token) {
-        // 先检查令牌格式是否正确
-        if (!jwtUtils.validateToken(token)) {
-            return false;
-        }
+        return verifyToken(token) != null;
+    }
 
-        // 获取用户ID
-        Long userId = jwtUtils.getUserIdFromToken(token);
-        if (userId == null) {
-            return false;
+    @Override
+    public VerifiedToken verifyToken(String token) {
+        // 一次解析同时校验格式、签名和过期时间
+        VerifiedToken verified = jwtUtils.verify(token);
+        if (verified == null || verified.getUserId() == null) {
+            return null;
         }
 
-        // 检查用户是否被封禁
-        if (getUserBanInfo(userId) != null) {
-            return false;
+        // 无状态模式只检查本地的撤销纪元，封禁和使全部令牌失效都会递增纪元
+        if (stateless) {
+            return revocationEpochCache.isRevoked(verified.getUserId(), verified.getEpoch()) ? null : verified;
         }
 
-        // 检查令牌是否存在于Redis中
-        String tokenKey = LOGIN_TOKEN_KEY_PREFIX + token;
-        return Boolean.TRUE.equals(redisTemplate.hasKey(tokenKey));
+        // 一次往返检查令牌是否存在于Redis中、用户是否被封禁，并取得会话剩余有效期
+        Long userId = verified.getUserId();
+        boolean checkBan = !isKnownNotBanned(userId);
+        List<?> result = stringRedisTemplate.execute(VALIDATE_SCRIPT,
+                Arrays.asList(sessionKey(verified), BAN_USER_KEY_PREFIX + userId, PrincipalCache.epochKey(userId)),
+                checkBan ? "1" : "0");
+        if (result == null || result.size() < 4) {
+            return null;
+        }
+        boolean sessionExists = ((Number) result.get(0)).longValue() == 1;
+        boolean banned = ((Number) result.get(1)).longValue() == 1;
+        if (checkBan && !banned) {
+            rememberNotBanned(userId);
+        }
+        if (!sessionExists || banned) {
+            return null;
+        }
+        return verified.withSession(((Number) result.get(2)).longValue(), ((Number) result.get(3)).longValue());
     }
 
     @Override
-    public String refreshToken(String token) {
-        // 验证令牌有效性
-        if (!validateToken(token)) {
-            throw new RuntimeException("无效的令牌");
-        }
-
-        // 检查是否需要刷新令牌
-        if (!needRefresh(token)) {
-            return token;
+    public TokenPair refreshToken(String refreshToken) {
+        // 解析刷新令牌：{令牌ID}.{随机密钥}
+        int separator = refreshToken != null ? refreshToken.indexOf('.') : -1;
+        if (separator <= 0 || separator == refreshToken.length() - 1) {
+            throw new RuntimeException("无效的刷新令牌");
         }
-
-        // 获取令牌信息
-        String tokenKey = LOGIN_TOKEN_KEY_PREFIX + token;
-        Object tokenInfoObj = redisTemplate.opsForValue().get(tokenKey);
-        if (tokenInfoObj == null) {
-            throw new RuntimeException("令牌信息不存在");
+        String tokenId = refreshToken.substring(0, separator);
+        String secret = refreshToken.substring(separator + 1);
+
+        // 读取会话并校验刷新令牌
+        String sessionKey = LOGIN_SESSION_KEY_PREFIX + tokenId;
+        Map<Object, Object> session = stringRedisTemplate.opsForHash().entries(sessionKey);
+        Object expected = session.get("refresh");
+        if (expected == null || !MessageDigest.isEqual(
+                expected.toString().getBytes(StandardCharsets.UTF_8),
+                digest(secret).getBytes(StandardCharsets.UTF_8))) {
+            throw new RuntimeException("登录已过期，请重新登录");
         }
-
-        // 解析令牌信息
-        Map<String, Object> tokenInfo;
-        try {
-            tokenInfo = objectMapper.readValue(tokenInfoObj.toString(), Map.class);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException("解析令牌信息失败", e);
+        Long userId = Long.valueOf(session.get("userId").toString());
+        String banInfo = getUserBanInfo(userId);
+        if (banInfo != null) {
+            throw new RuntimeException("用户已被封禁: " + banInfo);
         }
 
-        // 获取用户ID
-        Long userId = Long.valueOf(tokenInfo.get("userId").toString());
-        String device = (String) tokenInfo.get("device");
-        String ip = (String) tokenInfo.get("ip");
-
-        // 使旧令牌失效
-        invalidateToken(token);
-
-        // 创建新令牌
+        // 延长服务端会话有效期，会话键和刷新令牌不变，并发刷新互不影响
+        long ttlMillis = refreshExpiration * 1000;
+        long now = System.currentTimeMillis();
+        String sessionsKey = LOGIN_USER_SESSIONS_KEY_PREFIX + userId;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.pExpire(sessionKey, ttlMillis);
+            conn.zAdd(sessionsKey, now + ttlMillis, tokenId);
+            conn.pExpire(sessionsKey, ttlMillis);
+            return null;
+        });
+
+        // 以同一令牌ID签发新的访问令牌
         User user = new User();
         user.setId(userId);
-        String newToken = jwtUtils.generateToken(user);
-
-        // 存储新令牌信息
-        saveTokenInfo(newToken, userId, device, ip);
-
-        return newToken;
+        user.setUsername((String) session.get("username"));
+        return TokenPair.builder()
+                .token(jwtUtils.generateToken(user, tokenId, revocationEpochCache.currentEpoch(userId)))
+                .refreshToken(refreshToken)
+                .expiresIn(jwtUtils.getExpirationSeconds())
+                .build();
     }
 
     @Override
     public void invalidateToken(String token) {
-        // 获取用户ID
-        Long userId = jwtUtils.getUserIdFromToken(token);
-        if (userId == null) {
+        VerifiedToken verified = jwtUtils.verify(token);
+        if (verified == null || verified.getUserId() == null) {
             return;
         }
+        removeSession(verified);
+    }
 
-        // 删除令牌信息
-        String tokenKey = LOGIN_TOKEN_KEY_PREFIX + token;
-        redisTemplate.delete(tokenKey);
+    /**
+     * 删除会话信息并从用户会话索引中移除
+     */
+    private void removeSession(VerifiedToken verified) {
+        redisTemplate.delete(sessionKey(verified));
+        stringRedisTemplate.opsForZSet().remove(LOGIN_USER_SESSIONS_KEY_PREFIX + verified.getUserId(),
+                indexMember(verified));
+    }
 
-        // 从用户令牌集合中移除
-        String userTokensKey = LOGIN_USER_TOKENS_KEY_PREFIX + userId;
-        redisTemplate.opsForSet().remove(userTokensKey, token);
+    /**
+     * 令牌对应的会话键：新令牌以令牌ID为键，旧版令牌以完整令牌为键
+     */
+    private String sessionKey(VerifiedToken verified) {
+        return verified.getTokenId() != null
+                ? LOGIN_SESSION_KEY_PREFIX + verified.getTokenId()
+                : LOGIN_TOKEN_KEY_PREFIX + verified.getToken();
+    }
+
+    /**
+     * 令牌在用户会话索引中的成员
+     */
+    private String indexMember(VerifiedToken verified) {
+        return verified.getTokenId() != null ? verified.getTokenId() : verified.getToken();
+    }
+
+    /**
+     * 会话索引成员对应的会话键，旧版成员为完整令牌（含"."分隔符），令牌ID不含"."
+     */
+    private String sessionKey(String indexMember) {
+        return indexMember.indexOf('.') >= 0
+                ? LOGIN_TOKEN_KEY_PREFIX + indexMember
+                : LOGIN_SESSION_KEY_PREFIX + indexMember;
     }
 
     @Override
     public void invalidateUserTokens(Long userId) {
-        // 获取用户的所有令牌
-        String userTokensKey = LOGIN_USER_TOKENS_KEY_PREFIX + userId;
-        Set<Object> tokens = redisTemplate.opsForSet().members(userTokensKey);
-        if (tokens == null || tokens.isEmpty()) {
-            return;
+        // 递增撤销纪元，无状态模式下已签发的访问令牌随之失效
+        revocationEpochCache.revoke(userId);
+
+        // 获取用户的所有令牌（会话索引及尚未迁移的旧版令牌集合）
+        String sessionsKey = LOGIN_USER_SESSIONS_KEY_PREFIX + userId;
+        String legacyKey = LEGACY_USER_TOKENS_KEY_PREFIX + userId;
+        List<String> tokenKeys = new ArrayList<>();
+        Set<String> members = stringRedisTemplate.opsForZSet().range(sessionsKey, 0, -1);
+        if (members != null) {
+            for (String member : members) {
+                tokenKeys.add(sessionKey(member));
+            }
         }
-
-        // 删除每个令牌
-        for (Object tokenObj : tokens) {
-            String token = tokenObj.toString();
-            String tokenKey = LOGIN_TOKEN_KEY_PREFIX + token;
-            redisTemplate.delete(tokenKey);
+        Set<Object> legacyTokens = redisTemplate.opsForSet().members(legacyKey);
+        if (legacyTokens != null) {
+            for (Object tokenObj : legacyTokens) {
+                tokenKeys.add(LOGIN_TOKEN_KEY_PREFIX + tokenObj);
+            }
         }
 
-        // 清空用户令牌集合
-        redisTemplate.delete(userTokensKey);
+        // 一次删除全部令牌信息及索引
+        tokenKeys.add(sessionsKey);
+        tokenKeys.add(legacyKey);
+        stringRedisTemplate.delete(tokenKeys);
     }
 
     @Override
     public void banUser(Long userId, String reason, int minutes) {
+        notBannedUntil.remove(userId);
         String banKey = BAN_USER_KEY_PREFIX + userId;
         redisTemplate.opsForValue().set(banKey, reason, minutes, TimeUnit.MINUTES);
         
-        // 使该用户的所有令牌失效
+        // 使该用户的所有令牌及缓存的用户主体失效
         invalidateUserTokens(userId);
+        principalCache.invalidate(userId);
     }
 
     @Override
@@ -177,82 +313,169 @@ public class TokenServiceImpl implements TokenService {
     }
 
     /**
-     * 检查令牌是否需要刷新
-     *
-     * @param token 令牌
-     * @return 是否需要刷新
+     * 本地近端缓存中是否已确认用户未被封禁
      */
-    private boolean needRefresh(String token) {
-        long expirationTime = jwtUtils.getExpirationDateFromToken(token).getTime();
-        long currentTime = System.currentTimeMillis();
-        
-        // 如果过期时间小于当前时间加上刷新阈值，则需要刷新
-        return expirationTime < currentTime + JWT_REFRESH_THRESHOLD;
+    private boolean isKnownNotBanned(Long userId) {
+        Long until = notBannedUntil.get(userId);
+        return until != null && until > System.currentTimeMillis();
+    }
+
+    private void rememberNotBanned(Long userId) {
+        if (banNearCacheSeconds <= 0) {
+            return;
+        }
+        if (notBannedUntil.size() >= MAX_BAN_CACHE_ENTRIES) {
+            notBannedUntil.clear();
+        }
+        notBannedUntil.put(userId, System.currentTimeMillis() + banNearCacheSeconds * 1000);
     }
 
     /**
-     * 保存令牌信息到Redis
+     * 保存会话信息到Redis
+     * 会话以紧凑的令牌ID为键，字段存为小哈希；刷新令牌只保存摘要
      *
-     * @param token 令牌
-     * @param userId 用户ID
+     * @param tokenId 令牌ID
+     * @param user 用户
      * @param device 设备信息
      * @param ip IP地址
+     * @param refreshSecret 刷新令牌的随机密钥
      */
-    private void saveTokenInfo(String token, Long userId, String device, String ip) {
-        // 创建令牌信息
-        Map<String, Object> tokenInfo = new HashMap<>();
-        tokenInfo.put("userId", userId);
-        tokenInfo.put("device", device);
-        tokenInfo.put("ip", ip);
+    private void saveSession(String tokenId, User user, String device, String ip, String refreshSecret) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("userId", String.valueOf(user.getId()));
+        fields.put("username", user.getUsername());
+        fields.put("refresh", digest(refreshSecret));
+        if (device != null) {
+            fields.put("device", device);
+        }
+        if (ip != null) {
+            fields.put("ip", ip);
+        }
+
+        // 写入会话，并将令牌ID按过期时间加入用户会话索引，顺带移除已过期的成员；
+        // 索引随最新会话一起过期，长期不登录的用户不会留下索引
+        long ttlMillis = refreshExpiration * 1000;
+        long now = System.currentTimeMillis();
+        String sessionKey = LOGIN_SESSION_KEY_PREFIX + tokenId;
+        String sessionsKey = LOGIN_USER_SESSIONS_KEY_PREFIX + user.getId();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.hMSet(sessionKey, fields);
+            conn.pExpire(sessionKey, ttlMillis);
+            conn.zAdd(sessionsKey, now + ttlMillis, tokenId);
+            conn.zRemRangeByScore(sessionsKey, 0, now);
+            conn.pExpire(sessionsKey, ttlMillis);
+            return null;
+        });
+    }
 
+    /**
+     * 生成刷新令牌的随机密钥（256位，URL安全Base64编码）
+     */
+    private String newRefreshSecret() {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * 计算刷新令牌密钥的SHA-256摘要，Redis中不保存密钥原文
+     */
+    private static String digest(String secret) {
         try {
-            // 将令牌信息存储到Redis
-            String tokenKey = LOGIN_TOKEN_KEY_PREFIX + token;
-            String tokenInfoJson = objectMapper.writeValueAsString(tokenInfo);
-            redisTemplate.opsForValue().set(tokenKey, tokenInfoJson, JWT_EXPIRATION_TIME, TimeUnit.MILLISECONDS);
-
-            // 将令牌添加到用户令牌集合
-            String userTokensKey = LOGIN_USER_TOKENS_KEY_PREFIX + userId;
-            redisTemplate.opsForSet().add(userTokensKey, token);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException("序列化令牌信息失败", e);
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
         }
     }
 
     /**
      * 定时清理过期令牌
-     * 每小时执行一次
+     * 每小时执行一次，只在持有租约的节点上执行；按游标分批扫描会话索引，每批通过流水线按分值删除已过期的成员，
+     * 不使用阻塞的 KEYS 命令
      */
     @Scheduled(fixedRate = 60 * 60 * 1000)
     public void cleanExpiredTokens() {
-        log.info("开始清理过期令牌");
-        
-        // 获取所有用户令牌集合的key
-        Set<String> userTokensKeys = redisTemplate.keys(LOGIN_USER_TOKENS_KEY_PREFIX + "*");
-        if (userTokensKeys == null || userTokensKeys.isEmpty()) {
-            return;
-        }
+        leaderLease.runIfLeader(CLEANUP_JOB, CLEANUP_LEASE_TTL, this::cleanExpiredTokens);
+    }
 
-        // 遍历每个用户的令牌集合
-        for (String userTokensKey : userTokensKeys) {
-            Set<Object> tokens = redisTemplate.opsForSet().members(userTokensKey);
-            if (tokens == null || tokens.isEmpty()) {
-                continue;
+    private void cleanExpiredTokens(long fence) {
+        log.info("开始清理过期令牌");
+        long now = System.currentTimeMillis();
+        long[] removed = {0};
+        // 每批处理前确认仍持有租约，失去租约后停止
+        BooleanSupplier leading = () -> leaderLease.isHeld(CLEANUP_JOB, fence);
+
+        scanKeys(LOGIN_USER_SESSIONS_KEY_PREFIX + "*", leading, batch -> {
+            List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (String sessionsKey : batch) {
+                    conn.zRemRangeByScore(sessionsKey, 0, now);
+                }
+                return null;
+            });
+            for (Object result : results) {
+                if (result instanceof Number) {
+                    removed[0] += ((Number) result).longValue();
+                }
             }
+        });
+
+        // 将旧版令牌集合迁移到会话索引
+        scanKeys(LEGACY_USER_TOKENS_KEY_PREFIX + "*", leading, batch -> batch.forEach(this::migrateLegacyTokens));
 
-            // 检查每个令牌是否过期
+        log.info("过期令牌清理完成，移除 {} 个过期令牌", removed[0]);
+    }
+
+    /**
+     * 将旧版用户令牌集合迁移为会话索引：仍有效的令牌按剩余有效期加入索引，随后删除旧集合
+     */
+    private void migrateLegacyTokens(String legacyKey) {
+        String userId = legacyKey.substring(LEGACY_USER_TOKENS_KEY_PREFIX.length());
+        String sessionsKey = LOGIN_USER_SESSIONS_KEY_PREFIX + userId;
+        Set<Object> tokens = redisTemplate.opsForSet().members(legacyKey);
+        long now = System.currentTimeMillis();
+        if (tokens != null) {
             for (Object tokenObj : tokens) {
                 String token = tokenObj.toString();
-                String tokenKey = LOGIN_TOKEN_KEY_PREFIX + token;
-                
-                // 如果令牌信息不存在，则从用户令牌集合中移除
-                if (!Boolean.TRUE.equals(redisTemplate.hasKey(tokenKey))) {
-                    redisTemplate.opsForSet().remove(userTokensKey, token);
-                    log.debug("移除过期令牌: {}", token);
+                Long ttl = stringRedisTemplate.getExpire(LOGIN_TOKEN_KEY_PREFIX + token, TimeUnit.MILLISECONDS);
+                if (ttl != null && ttl > 0) {
+                    stringRedisTemplate.opsForZSet().add(sessionsKey, token, now + ttl);
+                    stringRedisTemplate.expire(sessionsKey, refreshExpiration, TimeUnit.SECONDS);
                 }
             }
         }
-        
-        log.info("过期令牌清理完成");
+        redisTemplate.delete(legacyKey);
+        log.debug("迁移旧版令牌集合: {}", legacyKey);
+    }
+
+    /**
+     * 按游标分批扫描匹配的键
+     *
+     * @param pattern 键的匹配模式
+     * @param active 每批处理前检查，返回false时停止扫描
+     * @param batchHandler 每批键的处理回调
+     */
+    private void scanKeys(String pattern, BooleanSupplier active, Consumer<List<String>> batchHandler) {
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(SCAN_BATCH_SIZE).build();
+        List<String> batch = new ArrayList<>(SCAN_BATCH_SIZE);
+        try (Cursor<byte[]> cursor = stringRedisTemplate.executeWithStickyConnection(
+                connection -> connection.scan(options))) {
+            while (cursor != null && cursor.hasNext()) {
+                batch.add(new String(cursor.next(), StandardCharsets.UTF_8));
+                if (batch.size() >= SCAN_BATCH_SIZE) {
+                    if (!active.getAsBoolean()) {
+                        log.warn("扫描 {} 时失去任务租约，停止处理", pattern);
+                        return;
+                    }
+                    batchHandler.accept(batch);
+                    batch = new ArrayList<>(SCAN_BATCH_SIZE);
+                }
+            }
+        }
+        if (!batch.isEmpty() && active.getAsBoolean()) {
+            batchHandler.accept(batch);
+        }
     }
 } 
\ No newline at end of file
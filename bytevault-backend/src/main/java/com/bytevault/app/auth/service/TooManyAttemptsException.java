@@ -0,0 +1,18 @@
+package com.bytevault.app.auth.service;
+
+import lombok.Getter;
+
+/**
+ * 登录、注册请求过于频繁或密码哈希线程池已满时抛出，控制器返回429
+ */
+@Getter
+public class TooManyAttemptsException extends RuntimeException {
+
+    // 建议客户端重试前等待的秒数
+    private final long retryAfterSeconds;
+
+    public TooManyAttemptsException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
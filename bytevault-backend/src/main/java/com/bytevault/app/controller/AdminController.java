@@ -1,7 +1,10 @@
 package com.bytevault.app.controller;
 
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.bytevault.app.file.service.StorageUsageService;
 import com.bytevault.app.model.Role;
 import com.bytevault.app.model.User;
+import com.bytevault.app.service.LeaderLease;
 import com.bytevault.app.service.RoleService;
 import com.bytevault.app.service.UserService;
 import com.bytevault.app.auth.service.TokenService;
@@ -25,6 +28,8 @@ public class AdminController {
     private final UserService userService;
     private final RoleService roleService;
     private final TokenService tokenService;
+    private final StorageUsageService storageUsageService;
+    private final LeaderLease leaderLease;
 
     /**
      * 获取所有用户
@@ -34,6 +39,50 @@ public class AdminController {
         return ResponseEntity.ok(userService.getAllUsers());
     }
 
+    /**
+     * 分页获取用户
+     *
+     * @param page    页码
+     * @param size    每页大小
+     * @param keyword 用户名关键字
+     * @return 用户分页结果
+     */
+    @GetMapping("/users/page")
+    public ResponseEntity<Map<String, Object>> getUserPage(
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String keyword) {
+        try {
+            IPage<User> userPage = userService.getUserPage(page, size, keyword);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("users", userPage.getRecords());
+            response.put("total", userPage.getTotal());
+            response.put("page", userPage.getCurrent());
+            response.put("size", userPage.getSize());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("分页获取用户失败: {}", e.getMessage(), e);
+            return ResponseEntity.badRequest().body(Map.of("message", "分页获取用户失败: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * 获取定时任务的租约持有节点及执行耗时
+     */
+    @GetMapping("/jobs")
+    public ResponseEntity<Map<String, Object>> getJobStatus() {
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("node", leaderLease.getNodeId());
+            response.put("jobs", leaderLease.getStatus());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("获取定时任务状态失败: {}", e.getMessage(), e);
+            return ResponseEntity.badRequest().body(Map.of("message", "获取定时任务状态失败: " + e.getMessage()));
+        }
+    }
+
     /**
      * 获取所有角色
      */
@@ -192,4 +241,55 @@ public class AdminController {
             return ResponseEntity.badRequest().body(Map.of("message", "获取用户封禁状态失败: " + e.getMessage()));
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * 查询用户的存储用量及配额
+     *
+     * @param userId 用户ID
+     * @return 存储用量
+     */
+    @GetMapping("/users/{userId}/storage")
+    public ResponseEntity<?> getUserStorage(@PathVariable Long userId) {
+        try {
+            if (!userService.existsById(userId)) {
+                return ResponseEntity.badRequest().body(Map.of("message", "用户不存在"));
+            }
+            return ResponseEntity.ok(storageUsageService.getUsage(userId));
+        } catch (Exception e) {
+            log.error("获取用户存储用量失败: {}", e.getMessage(), e);
+            return ResponseEntity.badRequest().body(Map.of("message", "获取用户存储用量失败: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * 设置用户存储配额
+     *
+     * @param userId     用户ID
+     * @param quotaBytes 配额（字节），不传时恢复默认配额
+     * @return 设置结果
+     */
+    @PutMapping("/users/{userId}/quota")
+    public ResponseEntity<?> updateUserQuota(
+            @PathVariable Long userId,
+            @RequestParam(required = false) Long quotaBytes) {
+        try {
+            if (!userService.existsById(userId)) {
+                return ResponseEntity.badRequest().body(Map.of("message", "用户不存在"));
+            }
+            if (quotaBytes != null && quotaBytes < 0) {
+                return ResponseEntity.badRequest().body(Map.of("message", "配额不能为负数"));
+            }
+
+            storageUsageService.updateQuota(userId, quotaBytes);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", "用户配额已更新");
+            response.put("userId", userId);
+            response.put("quotaBytes", quotaBytes);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("设置用户配额失败: {}", e.getMessage(), e);
+            return ResponseEntity.badRequest().body(Map.of("message", "设置用户配额失败: " + e.getMessage()));
+        }
+    }
+}
@@ -10,6 +10,8 @@ import org.springframework.web.multipart.MultipartFile;
 
 import com.bytevault.app.auth.model.UserDetailsImpl;
 import com.bytevault.app.auth.service.AuthService;
+import com.bytevault.app.file.service.ObjectFetchCoalescer;
+import com.bytevault.app.file.util.ImageUtils;
 import com.bytevault.app.model.AvatarUploadResponse;
 import com.bytevault.app.model.BackgroundImage;
 import com.bytevault.app.model.User;
@@ -17,11 +19,11 @@ import com.bytevault.app.service.BackgroundImageService;
 import com.bytevault.app.service.UserService;
 
 import io.minio.*;
+import io.minio.errors.ErrorResponseException;
 import io.minio.http.Method;
 
-import org.apache.commons.io.IOUtils;
-
-import java.io.InputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,6 +44,11 @@ public class UserController {
     private final AuthService authService;
     private final MinioClient minioClient;
     private final BackgroundImageService backgroundImageService;
+    private final ObjectFetchCoalescer objectFetchCoalescer;
+    
+    // 头像最长边像素
+    private static final int AVATAR_SIZE = 256;
+    private static final float AVATAR_JPEG_QUALITY = 0.85f;
     
     @Value("${minio.avatarBucketName}")
     private String avatarBucket;
@@ -147,15 +154,25 @@ public class UserController {
             if (originalFilename != null && originalFilename.contains(".")) {
                 fileExtension = originalFilename.substring(originalFilename.lastIndexOf("."));
             }
+
+            // 缩放头像并统一转为JPEG，GIF（可能是动图）和无法解码的格式保留原图
+            byte[] data = file.getBytes();
+            if (!"image/gif".equals(contentType)) {
+                BufferedImage image = ImageUtils.read(data);
+                if (image != null) {
+                    data = ImageUtils.toJpeg(ImageUtils.scaleToFit(image, AVATAR_SIZE), AVATAR_JPEG_QUALITY);
+                    contentType = "image/jpeg";
+                    fileExtension = ".jpg";
+                }
+            }
             String objectName = "avatar_" + currentUser.getId() + "_" + UUID.randomUUID() + fileExtension;
 
             // 上传文件到MinIO的头像桶
-            InputStream inputStream = file.getInputStream();
             minioClient.putObject(
                     PutObjectArgs.builder()
                             .bucket(avatarBucket)
                             .object(objectName)
-                            .stream(inputStream, file.getSize(), -1)
+                            .stream(new ByteArrayInputStream(data), data.length, -1)
                             .contentType(contentType)
                             .build());
 
@@ -248,16 +265,8 @@ public class UserController {
     @GetMapping("/avatar/{objectName}")
     public ResponseEntity<byte[]> getAvatar(@PathVariable String objectName) {
         try {
-            // 从MinIO获取头像文件
-            InputStream inputStream = minioClient.getObject(
-                    GetObjectArgs.builder()
-                            .bucket(avatarBucket)
-                            .object(objectName)
-                            .build());
-            
-            // 读取头像内容
-            byte[] imageBytes = inputStream.readAllBytes();
-            inputStream.close();
+            // 从MinIO获取头像内容（并发请求共享同一次读取）
+            byte[] imageBytes = objectFetchCoalescer.fetch(avatarBucket, objectName);
             
             // 根据文件扩展名设置正确的Content-Type
             MediaType contentType = MediaType.IMAGE_JPEG; // 默认JPEG
@@ -402,25 +411,28 @@ public class UserController {
     
     /**
      * 代理访问背景图片 - 直接返回图片内容
+     * 传入 w 时返回不小于该宽度的最小响应式变体
      */
     @GetMapping("/background/{userId}/{filename:.+}")
     public ResponseEntity<byte[]> getBackgroundImage(
             @PathVariable String userId,
-            @PathVariable String filename) {
+            @PathVariable String filename,
+            @RequestParam(value = "w", required = false) Integer width) {
         
         try {
             String objectName = userId + "/" + filename;
+            String variantObjectName = backgroundImageService.resolveVariantObjectName(objectName, width);
             
-            // 直接获取对象内容
-            InputStream is = minioClient.getObject(
-                    GetObjectArgs.builder()
-                            .bucket(backgroundBucket)
-                            .object(objectName)
-                            .build());
-            
-            // 读取图片内容
-            byte[] imageBytes = IOUtils.toByteArray(is);
-            is.close();
+            // 获取图片内容（并发请求共享同一次读取），变体不存在时（旧图片或原图较小）回退到主图
+            byte[] imageBytes;
+            try {
+                imageBytes = objectFetchCoalescer.fetch(backgroundBucket, variantObjectName);
+            } catch (ErrorResponseException e) {
+                if (variantObjectName.equals(objectName) || !"NoSuchKey".equals(e.errorResponse().code())) {
+                    throw e;
+                }
+                imageBytes = objectFetchCoalescer.fetch(backgroundBucket, objectName);
+            }
             
             // 根据文件扩展名设置正确的Content-Type
             MediaType contentType = MediaType.IMAGE_JPEG; // 默认JPEG
@@ -3,10 +3,18 @@ package com.bytevault.app.file.controller;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.bytevault.app.auth.model.UserDetailsImpl;
 import com.bytevault.app.file.service.FileService;
+import com.bytevault.app.file.service.QuotaExceededException;
+import com.bytevault.app.file.service.StorageUsageService;
+import com.bytevault.app.file.service.ThumbnailService;
+import com.bytevault.app.model.CursorPage;
+import com.bytevault.app.model.DownloadManifest;
 import com.bytevault.app.model.FileInfo;
+import com.bytevault.app.model.StorageUsage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -17,6 +25,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/files")
@@ -25,6 +34,8 @@ import java.util.Map;
 public class FileController {
 
     private final FileService fileService;
+    private final ThumbnailService thumbnailService;
+    private final StorageUsageService storageUsageService;
 
     /**
      * 上传文件 (使用断点续传实现)
@@ -36,6 +47,7 @@ public class FileController {
             @RequestParam(value = "isPublic", defaultValue = "false") boolean isPublic,
             @AuthenticationPrincipal UserDetailsImpl userDetails) {
 
+        String uploadId = null;
         try {
             // 使用断点续传逻辑处理单个文件上传
             String filename = file.getOriginalFilename();
@@ -43,7 +55,7 @@ public class FileController {
             String fileType = file.getContentType();
             
             // 1. 初始化上传
-            String uploadId = fileService.initChunkUpload(filename, fileSize, fileType, userDetails.getId(), parentId, isPublic);
+            uploadId = fileService.initChunkUpload(filename, fileSize, fileType, userDetails.getId(), parentId, isPublic);
             
             // 2. 上传单个分块
             fileService.uploadChunk(uploadId, 0, file, userDetails.getId());
@@ -60,7 +72,15 @@ public class FileController {
             response.put("isPublic", "public".equals(fileInfo.getVisibility()));
 
             return ResponseEntity.ok(response);
+        } catch (QuotaExceededException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(response);
         } catch (Exception e) {
+            // 上传失败时取消本次上传，释放预占空间
+            if (uploadId != null) {
+                fileService.cancelChunkUpload(uploadId, userDetails.getId());
+            }
             Map<String, Object> response = new HashMap<>();
             response.put("message", "文件上传失败: " + e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
@@ -98,6 +118,10 @@ public class FileController {
             response.put("files", fileInfoList);
 
             return ResponseEntity.ok(response);
+        } catch (QuotaExceededException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
             response.put("message", "文件夹上传失败: " + e.getMessage());
@@ -107,7 +131,7 @@ public class FileController {
 
     /**
      * 删除文件
-     * 如果是文件夹，会递归删除所有子文件和子文件夹
+     * 如果是文件夹，会一并删除整个子树
      */
     @DeleteMapping("/{fileId}")
     public ResponseEntity<Map<String, Object>> deleteFile(
@@ -126,6 +150,31 @@ public class FileController {
         }
     }
 
+    /**
+     * 移动文件或文件夹
+     */
+    @PutMapping("/{fileId}/move")
+    public ResponseEntity<Map<String, Object>> moveFile(
+            @PathVariable Long fileId,
+            @RequestParam(value = "targetParentId", defaultValue = "0") Long targetParentId,
+            @AuthenticationPrincipal UserDetailsImpl userDetails) {
+
+        Map<String, Object> response = new HashMap<>();
+        try {
+            boolean success = fileService.moveFile(fileId, userDetails.getId(), targetParentId);
+            if (success) {
+                response.put("message", "移动成功");
+                return ResponseEntity.ok(response);
+            } else {
+                response.put("message", "移动失败");
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+            }
+        } catch (Exception e) {
+            response.put("message", "移动失败: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
     /**
      * 获取文件下载URL
      */
@@ -147,6 +196,73 @@ public class FileController {
         }
     }
 
+    /**
+     * 获取分段下载清单
+     * 客户端按清单中的分段并行发起Range请求，适用于大文件下载
+     */
+    @GetMapping("/{fileId}/manifest")
+    public ResponseEntity<Map<String, Object>> getDownloadManifest(
+            @PathVariable Long fileId,
+            @RequestParam(value = "segmentSize", required = false) Long segmentSize,
+            @AuthenticationPrincipal UserDetailsImpl userDetails) {
+
+        DownloadManifest manifest = fileService.getDownloadManifest(fileId, userDetails.getId(), segmentSize);
+
+        Map<String, Object> response = new HashMap<>();
+        if (manifest != null) {
+            response.put("message", "获取下载清单成功");
+            response.put("manifest", manifest);
+            return ResponseEntity.ok(response);
+        } else {
+            response.put("message", "获取下载清单失败");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+    }
+
+    /**
+     * 获取图片缩略图
+     * 未登录用户只能获取公开文件的缩略图
+     */
+    @GetMapping("/{fileId}/thumb")
+    public ResponseEntity<byte[]> getThumbnail(
+            @PathVariable Long fileId,
+            @RequestParam(value = "size", defaultValue = "256") int size,
+            @AuthenticationPrincipal UserDetailsImpl userDetails) {
+
+        FileInfo fileInfo = fileService.getFileInfo(fileId);
+        if (fileInfo == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        // 检查权限（所有者、自身公开或继承公开）
+        if (!fileService.canAccess(fileInfo, userDetails != null ? userDetails.getId() : null)) {
+            log.warn("无权限获取缩略图: {}", fileId);
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        try {
+            byte[] thumbnail = thumbnailService.getThumbnail(fileInfo, size);
+            if (thumbnail == null) {
+                // 非图片或无法解码，由前端显示默认图标
+                return ResponseEntity.notFound().build();
+            }
+
+            // 缩略图按文件ID存放，文件覆盖后会重新生成，因此只做短期缓存
+            // 只有文件本身公开或继承公开时才允许共享缓存，所有者访问私有文件仍为私有缓存
+            boolean isPublic = fileService.isPublic(fileInfo);
+            CacheControl cacheControl = CacheControl.maxAge(10, TimeUnit.MINUTES);
+            cacheControl = isPublic ? cacheControl.cachePublic() : cacheControl.cachePrivate();
+            return ResponseEntity.ok()
+                    .cacheControl(cacheControl)
+                    .contentType(MediaType.IMAGE_JPEG)
+                    .contentLength(thumbnail.length)
+                    .body(thumbnail);
+        } catch (Exception e) {
+            log.error("获取缩略图失败: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     /**
      * 更新文件公开状态
      */
@@ -170,15 +286,17 @@ public class FileController {
 
     /**
      * 获取用户文件列表
+     * withUrl=false 时不生成下载URL，客户端通过 /{fileId}/download 按需获取
      */
     @GetMapping("/my")
     public ResponseEntity<Map<String, Object>> getUserFiles(
             @RequestParam(value = "parentId", required = false, defaultValue = "0") Long parentId,
             @RequestParam(value = "page", defaultValue = "1") int page,
             @RequestParam(value = "size", defaultValue = "10") int size,
+            @RequestParam(value = "withUrl", defaultValue = "true") boolean withUrl,
             @AuthenticationPrincipal UserDetailsImpl userDetails) {
 
-        IPage<FileInfo> files = fileService.getUserFiles(userDetails.getId(), parentId, page, size);
+        IPage<FileInfo> files = fileService.getUserFiles(userDetails.getId(), parentId, page, size, withUrl);
 
         Map<String, Object> response = new HashMap<>();
         response.put("message", "获取文件列表成功");
@@ -197,11 +315,21 @@ public class FileController {
     @GetMapping("/public")
     public ResponseEntity<Map<String, Object>> getPublicFiles(
             @RequestParam(value = "page", defaultValue = "1") int page,
-            @RequestParam(value = "size", defaultValue = "10") int size) {
-
-        IPage<FileInfo> files = fileService.getPublicFiles(page, size);
+            @RequestParam(value = "size", defaultValue = "10") int size,
+            @RequestParam(value = "withUrl", defaultValue = "true") boolean withUrl,
+            @RequestParam(value = "parentId", required = false) Long parentId) {
 
         Map<String, Object> response = new HashMap<>();
+
+        // 指定parentId时浏览公开目录（自身公开或继承公开）的内容
+        IPage<FileInfo> files = parentId != null
+                ? fileService.getPublicFolderFiles(parentId, page, size, withUrl)
+                : fileService.getPublicFiles(page, size, withUrl);
+        if (files == null) {
+            response.put("message", "无权限访问此文件夹");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(response);
+        }
+
         response.put("message", "获取公开文件列表成功");
         response.put("files", files.getRecords());
         response.put("total", files.getTotal());
@@ -220,9 +348,10 @@ public class FileController {
             @RequestParam String keyword,
             @RequestParam(value = "page", defaultValue = "1") int page,
             @RequestParam(value = "size", defaultValue = "10") int size,
+            @RequestParam(value = "withUrl", defaultValue = "true") boolean withUrl,
             @AuthenticationPrincipal UserDetailsImpl userDetails) {
 
-        IPage<FileInfo> files = fileService.searchFiles(userDetails.getId(), keyword, page, size);
+        IPage<FileInfo> files = fileService.searchFiles(userDetails.getId(), keyword, page, size, withUrl);
 
         Map<String, Object> response = new HashMap<>();
         response.put("message", "搜索文件成功");
@@ -235,6 +364,104 @@ public class FileController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * 游标分页获取用户文件列表
+     * 将返回的 nextCursor 作为下一次请求的 cursor，withTotal=true 时第一页返回总数
+     */
+    @GetMapping("/my/cursor")
+    public ResponseEntity<Map<String, Object>> getUserFilesByCursor(
+            @RequestParam(value = "parentId", required = false, defaultValue = "0") Long parentId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "20") int size,
+            @RequestParam(value = "withUrl", defaultValue = "false") boolean withUrl,
+            @RequestParam(value = "withTotal", defaultValue = "false") boolean withTotal,
+            @AuthenticationPrincipal UserDetailsImpl userDetails) {
+
+        Map<String, Object> response = new HashMap<>();
+        try {
+            CursorPage<FileInfo> files = fileService.getUserFilesByCursor(
+                    userDetails.getId(), parentId, cursor, size, withUrl, withTotal);
+            return ResponseEntity.ok(buildCursorResponse("获取文件列表成功", files));
+        } catch (IllegalArgumentException e) {
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * 游标分页获取公开文件列表，传入 parentId 时浏览公开目录的内容
+     */
+    @GetMapping("/public/cursor")
+    public ResponseEntity<Map<String, Object>> getPublicFilesByCursor(
+            @RequestParam(value = "parentId", required = false) Long parentId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "20") int size,
+            @RequestParam(value = "withUrl", defaultValue = "false") boolean withUrl,
+            @RequestParam(value = "withTotal", defaultValue = "false") boolean withTotal) {
+
+        Map<String, Object> response = new HashMap<>();
+        try {
+            CursorPage<FileInfo> files = parentId != null
+                    ? fileService.getPublicFolderFilesByCursor(parentId, cursor, size, withUrl, withTotal)
+                    : fileService.getPublicFilesByCursor(cursor, size, withUrl, withTotal);
+            if (files == null) {
+                response.put("message", "无权限访问此文件夹");
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(response);
+            }
+            return ResponseEntity.ok(buildCursorResponse("获取公开文件列表成功", files));
+        } catch (IllegalArgumentException e) {
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * 游标分页搜索文件
+     */
+    @GetMapping("/search/cursor")
+    public ResponseEntity<Map<String, Object>> searchFilesByCursor(
+            @RequestParam String keyword,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "20") int size,
+            @RequestParam(value = "withUrl", defaultValue = "false") boolean withUrl,
+            @AuthenticationPrincipal UserDetailsImpl userDetails) {
+
+        Map<String, Object> response = new HashMap<>();
+        try {
+            CursorPage<FileInfo> files = fileService.searchFilesByCursor(userDetails.getId(), keyword, cursor, size, withUrl);
+            return ResponseEntity.ok(buildCursorResponse("搜索文件成功", files));
+        } catch (IllegalArgumentException e) {
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    private Map<String, Object> buildCursorResponse(String message, CursorPage<FileInfo> files) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", message);
+        response.put("files", files.getRecords());
+        response.put("nextCursor", files.getNextCursor());
+        response.put("hasMore", files.getHasMore());
+        response.put("size", files.getSize());
+        if (files.getTotal() != null) {
+            response.put("total", files.getTotal());
+        }
+        return response;
+    }
+
+    /**
+     * 获取当前用户的存储用量及配额
+     */
+    @GetMapping("/storage")
+    public ResponseEntity<Map<String, Object>> getStorageUsage(@AuthenticationPrincipal UserDetailsImpl userDetails) {
+        StorageUsage usage = storageUsageService.getUsage(userDetails.getId());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", "获取存储用量成功");
+        response.put("usage", usage);
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * 获取文件详情
      */
@@ -248,7 +475,7 @@ public class FileController {
         Map<String, Object> response = new HashMap<>();
         if (fileInfo != null) {
             // 检查权限
-            if (fileInfo.getUserId().equals(userDetails.getId()) || "public".equals(fileInfo.getVisibility())) {
+            if (fileService.canAccess(fileInfo, userDetails.getId())) {
                 // 生成下载URL（如果是文件）
                 if (!fileInfo.getIsDir()) {
                     String downloadUrl = fileService.getFileDownloadUrl(fileId, userDetails.getId());
@@ -335,6 +562,10 @@ public class FileController {
             response.put("message", "初始化分块上传成功");
             response.put("uploadId", uploadId);
             return ResponseEntity.ok(response);
+        } catch (QuotaExceededException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
             response.put("message", "初始化分块上传失败: " + e.getMessage());
@@ -422,4 +653,21 @@ public class FileController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 取消分块上传
+     */
+    @DeleteMapping("/chunk/{uploadId}")
+    public ResponseEntity<Map<String, Object>> cancelChunkUpload(
+            @PathVariable String uploadId,
+            @AuthenticationPrincipal UserDetailsImpl userDetails) {
+
+        Map<String, Object> response = new HashMap<>();
+        if (fileService.cancelChunkUpload(uploadId, userDetails.getId())) {
+            response.put("message", "已取消上传");
+            return ResponseEntity.ok(response);
+        }
+        response.put("message", "取消上传失败");
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+    }
+}
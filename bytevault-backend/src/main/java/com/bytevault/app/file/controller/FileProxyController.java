@@ -2,9 +2,13 @@ package com.bytevault.app.file.controller;
 
 import com.bytevault.app.auth.model.UserDetailsImpl;
 import com.bytevault.app.file.service.FileService;
+import com.bytevault.app.file.service.ObjectFetchCoalescer;
 import com.bytevault.app.model.FileInfo;
 import io.minio.GetObjectArgs;
 import io.minio.MinioClient;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import io.minio.errors.ErrorResponseException;
 import io.minio.errors.MinioException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -17,10 +21,11 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URLEncoder;
@@ -34,17 +39,20 @@ public class FileProxyController {
 
     private final FileService fileService;
     private final MinioClient minioClient;
+    private final ObjectFetchCoalescer objectFetchCoalescer;
     
     @Value("${minio.userFilesBucketName}")
     private String userFilesBucket;
 
     /**
      * 代理下载文件
-     * 通过文件ID获取文件并提供下载
+     * 通过文件ID获取文件并提供下载，支持单个Range分段请求和If-Match校验（用于并行分段下载）
      */ 
     @GetMapping("/{fileId}")
     public ResponseEntity<InputStreamResource> proxyDownload(
             @PathVariable Long fileId,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String rangeHeader,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @AuthenticationPrincipal UserDetailsImpl userDetails) {
         try {
             // 获取文件信息
@@ -54,16 +62,10 @@ public class FileProxyController {
                 return ResponseEntity.notFound().build();
             }
             
-            // 检查权限
-            if (userDetails == null) {
-                // 未登录用户只能访问公开文件
-                if (!"public".equals(fileInfo.getVisibility())) {
-                    log.warn("未登录用户尝试访问非公开文件: {}", fileId);
-                    return ResponseEntity.status(403).build();
-                }
-            } else if (!fileInfo.getUserId().equals(userDetails.getId()) && !"public".equals(fileInfo.getVisibility())) {
-                // 已登录用户只能访问自己的文件和公开文件
-                log.warn("无权限下载文件: {}, 用户ID: {}", fileId, userDetails.getId());
+            // 检查权限：未登录用户只能访问公开文件（含继承公开），已登录用户还可访问自己的文件
+            Long userId = userDetails != null ? userDetails.getId() : null;
+            if (!fileService.canAccess(fileInfo, userId)) {
+                log.warn("无权限下载文件: {}, 用户ID: {}", fileId, userId);
                 return ResponseEntity.status(403).build();
             }
             
@@ -76,12 +78,64 @@ public class FileProxyController {
             // 构建MinIO对象名称
             String minioObjectName = fileInfo.getUserId() + "/" + fileInfo.getFilename();
             
-            // 从MinIO获取文件
-            InputStream inputStream = minioClient.getObject(
-                    GetObjectArgs.builder()
-                            .bucket(userFilesBucket)
-                            .object(minioObjectName)
-                            .build());
+            // 只支持单个字节区间，多区间请求按完整下载处理
+            if (rangeHeader != null && (!rangeHeader.startsWith("bytes=") || rangeHeader.contains(","))) {
+                rangeHeader = null;
+            }
+            
+            // 分段下载：以MinIO中对象的实际大小和ETag为准
+            if (rangeHeader != null || ifMatch != null) {
+                StatObjectResponse stat = minioClient.statObject(
+                        StatObjectArgs.builder()
+                                .bucket(userFilesBucket)
+                                .object(minioObjectName)
+                                .build());
+                String etag = stat.etag();
+                if (ifMatch != null && !matchesEtag(ifMatch, etag)) {
+                    log.info("文件已变更，ETag不匹配: {}", fileId);
+                    return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+                }
+                
+                if (rangeHeader != null) {
+                    long[] range = parseRange(rangeHeader, stat.size());
+                    if (range == null) {
+                        return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + stat.size())
+                                .build();
+                    }
+                    long length = range[1] - range[0] + 1;
+                    
+                    // 携带ETag条件读取，防止stat之后对象被覆盖导致分段错位
+                    InputStream rangeStream = minioClient.getObject(
+                            GetObjectArgs.builder()
+                                    .bucket(userFilesBucket)
+                                    .object(minioObjectName)
+                                    .offset(range[0])
+                                    .length(length)
+                                    .matchETag(etag)
+                                    .build());
+                    
+                    return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                            .header(HttpHeaders.CONTENT_RANGE, "bytes " + range[0] + "-" + range[1] + "/" + stat.size())
+                            .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                            .eTag(etag)
+                            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                            .contentLength(length)
+                            .body(new InputStreamResource(rangeStream));
+                }
+            }
+            
+            // 从MinIO获取文件，小文件合并并发读取，大文件直接流式读取
+            InputStream inputStream;
+            if (objectFetchCoalescer.isCoalescable(fileInfo.getFileSize())) {
+                inputStream = new ByteArrayInputStream(objectFetchCoalescer.fetch(userFilesBucket, minioObjectName));
+            } else {
+                inputStream = minioClient.getObject(
+                        GetObjectArgs.builder()
+                                .bucket(userFilesBucket)
+                                .object(minioObjectName)
+                                .build());
+            }
             
             // 设置响应头
             String encodedFilename = URLEncoder.encode(fileInfo.getFilename(), StandardCharsets.UTF_8.toString())
@@ -93,6 +147,7 @@ public class FileProxyController {
             headers.add(HttpHeaders.CACHE_CONTROL, "no-cache, no-store, must-revalidate");
             headers.add(HttpHeaders.PRAGMA, "no-cache");
             headers.add(HttpHeaders.EXPIRES, "0");
+            headers.add(HttpHeaders.ACCEPT_RANGES, "bytes");
             
             // 设置内容类型
             MediaType contentType = MediaType.APPLICATION_OCTET_STREAM;
@@ -111,11 +166,79 @@ public class FileProxyController {
                     .contentType(contentType)
                     .body(new InputStreamResource(inputStream));
             
+        } catch (ErrorResponseException e) {
+            if ("PreconditionFailed".equals(e.errorResponse().code())) {
+                log.info("文件已变更，ETag不匹配: {}", fileId);
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+            }
+            log.error("代理下载文件失败: {}", e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
         } catch (Exception e) {
             log.error("代理下载文件失败: {}", e.getMessage(), e);
             return ResponseEntity.internalServerError().build();
         }
     }
+    
+    /**
+     * 解析单个字节区间 bytes=start-end / bytes=start- / bytes=-suffix
+     * 
+     * @param rangeHeader Range请求头
+     * @param size 文件大小
+     * @return [起始位置, 结束位置]，区间无效时返回null
+     */
+    private long[] parseRange(String rangeHeader, long size) {
+        try {
+            String spec = rangeHeader.substring("bytes=".length()).trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            String startPart = spec.substring(0, dash).trim();
+            String endPart = spec.substring(dash + 1).trim();
+            
+            long start;
+            long end;
+            if (startPart.isEmpty()) {
+                // 后缀区间：最后N个字节
+                long suffix = Long.parseLong(endPart);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(startPart);
+                end = endPart.isEmpty() ? size - 1 : Math.min(Long.parseLong(endPart), size - 1);
+            }
+            
+            if (start < 0 || start >= size || start > end) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 判断If-Match请求头是否与对象ETag匹配
+     * If-Match使用强比较，弱校验值（W/前缀）一律视为不匹配
+     */
+    private boolean matchesEtag(String ifMatch, String etag) {
+        for (String candidate : ifMatch.split(",")) {
+            String value = candidate.trim();
+            if ("*".equals(value)) {
+                return true;
+            }
+            if (value.startsWith("W/")) {
+                continue;
+            }
+            if (value.replace("\"", "").equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
     /**
      * 代理访问MinIO中的文件
@@ -133,26 +256,12 @@ public class FileProxyController {
             String objectName = directory + "/" + filename;
             log.debug("代理访问文件: {}/{}", userFilesBucket, objectName);
             
-            // 从MinIO获取对象
-            InputStream stream = minioClient.getObject(
-                    GetObjectArgs.builder()
-                            .bucket(userFilesBucket)
-                            .object(objectName)
-                            .build()
-            );
+            // 从MinIO获取对象内容（并发请求共享同一次读取）
+            byte[] bytes = objectFetchCoalescer.fetch(userFilesBucket, objectName);
             
             // 获取对象的内容类型
             String contentType = determineContentType(filename);
             
-            // 读取对象内容
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            byte[] buffer = new byte[16384];
-            int bytesRead;
-            while ((bytesRead = stream.read(buffer, 0, buffer.length)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
-            }
-            byte[] bytes = outputStream.toByteArray();
-            
             // 设置响应头
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.parseMediaType(contentType));
@@ -1,6 +1,8 @@
 package com.bytevault.app.file.service;
 
 import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.bytevault.app.model.DownloadManifest;
+import com.bytevault.app.model.CursorPage;
 import com.bytevault.app.model.FileInfo;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -40,6 +42,15 @@ public interface FileService {
      */
     boolean deleteFile(Long fileId, Long userId);
     
+    /**
+     * 移动文件或文件夹（文件夹连同子树一起移动）
+     * @param fileId 文件ID
+     * @param userId 用户ID
+     * @param targetParentId 目标目录ID，0表示根目录
+     * @return 是否成功
+     */
+    boolean moveFile(Long fileId, Long userId, Long targetParentId);
+    
     /**
      * 获取文件下载URL
      * @param fileId 文件ID
@@ -48,6 +59,15 @@ public interface FileService {
      */
     String getFileDownloadUrl(Long fileId, Long userId);
     
+    /**
+     * 获取分段下载清单
+     * @param fileId 文件ID
+     * @param userId 用户ID
+     * @param segmentSize 期望的分段大小（字节），为空时使用默认值
+     * @return 下载清单，文件不存在或无权限时返回null
+     */
+    DownloadManifest getDownloadManifest(Long fileId, Long userId, Long segmentSize);
+    
     /**
      * 获取用户文件列表
      * @param userId 用户ID
@@ -58,6 +78,17 @@ public interface FileService {
      */
     IPage<FileInfo> getUserFiles(Long userId, Long parentId, int page, int size);
     
+    /**
+     * 获取用户文件列表
+     * @param userId 用户ID
+     * @param parentId 父目录ID
+     * @param page 页码
+     * @param size 每页大小
+     * @param withDownloadUrl 是否为文件生成下载URL，为false时由客户端按需获取
+     * @return 文件列表
+     */
+    IPage<FileInfo> getUserFiles(Long userId, Long parentId, int page, int size, boolean withDownloadUrl);
+    
     /**
      * 获取公开文件列表
      * @param page 页码
@@ -66,6 +97,75 @@ public interface FileService {
      */
     IPage<FileInfo> getPublicFiles(int page, int size);
     
+    /**
+     * 获取公开文件列表
+     * @param page 页码
+     * @param size 每页大小
+     * @param withDownloadUrl 是否为文件生成下载URL，为false时由客户端按需获取
+     * @return 文件列表
+     */
+    IPage<FileInfo> getPublicFiles(int page, int size, boolean withDownloadUrl);
+    
+    /**
+     * 获取公开目录（自身公开或继承公开）下的文件列表
+     * @param folderId 目录ID
+     * @param page 页码
+     * @param size 每页大小
+     * @param withDownloadUrl 是否为文件生成下载URL
+     * @return 文件列表，目录不存在或不是公开目录时返回null
+     */
+    IPage<FileInfo> getPublicFolderFiles(Long folderId, int page, int size, boolean withDownloadUrl);
+    
+    /**
+     * 游标分页获取用户文件列表（无OFFSET扫描，不统计总数）
+     * @param userId 用户ID
+     * @param parentId 父目录ID
+     * @param cursor 上一页返回的游标，第一页为空
+     * @param size 每页大小
+     * @param withDownloadUrl 是否为文件生成下载URL
+     * @param withTotal 是否返回总数（只在第一页统计）
+     * @return 文件列表
+     * @throws IllegalArgumentException 游标格式错误
+     */
+    CursorPage<FileInfo> getUserFilesByCursor(Long userId, Long parentId, String cursor, int size,
+                                              boolean withDownloadUrl, boolean withTotal);
+    
+    /**
+     * 游标分页获取公开广场文件列表
+     * @param cursor 上一页返回的游标，第一页为空
+     * @param size 每页大小
+     * @param withDownloadUrl 是否为文件生成下载URL
+     * @param withTotal 是否返回总数（估计值，短期缓存）
+     * @return 文件列表
+     * @throws IllegalArgumentException 游标格式错误
+     */
+    CursorPage<FileInfo> getPublicFilesByCursor(String cursor, int size, boolean withDownloadUrl, boolean withTotal);
+    
+    /**
+     * 游标分页获取公开目录（自身公开或继承公开）下的文件列表
+     * @param folderId 目录ID
+     * @param cursor 上一页返回的游标，第一页为空
+     * @param size 每页大小
+     * @param withDownloadUrl 是否为文件生成下载URL
+     * @param withTotal 是否返回总数（只在第一页统计）
+     * @return 文件列表，目录不存在或不是公开目录时返回null
+     * @throws IllegalArgumentException 游标格式错误
+     */
+    CursorPage<FileInfo> getPublicFolderFilesByCursor(Long folderId, String cursor, int size,
+                                                      boolean withDownloadUrl, boolean withTotal);
+    
+    /**
+     * 游标分页搜索文件（模糊搜索统计总数代价高，不返回总数）
+     * @param userId 用户ID
+     * @param keyword 关键词
+     * @param cursor 上一页返回的游标，第一页为空
+     * @param size 每页大小
+     * @param withDownloadUrl 是否为文件生成下载URL
+     * @return 文件列表
+     * @throws IllegalArgumentException 游标格式错误
+     */
+    CursorPage<FileInfo> searchFilesByCursor(Long userId, String keyword, String cursor, int size, boolean withDownloadUrl);
+    
     /**
      * 搜索文件
      * @param userId 用户ID
@@ -76,6 +176,17 @@ public interface FileService {
      */
     IPage<FileInfo> searchFiles(Long userId, String keyword, int page, int size);
     
+    /**
+     * 搜索文件
+     * @param userId 用户ID
+     * @param keyword 关键词
+     * @param page 页码
+     * @param size 每页大小
+     * @param withDownloadUrl 是否为文件生成下载URL，为false时由客户端按需获取
+     * @return 文件列表
+     */
+    IPage<FileInfo> searchFiles(Long userId, String keyword, int page, int size, boolean withDownloadUrl);
+    
     /**
      * 更新文件公开状态
      * @param fileId 文件ID
@@ -92,6 +203,21 @@ public interface FileService {
      */
     FileInfo getFileInfo(Long fileId);
     
+    /**
+     * 判断用户是否可以访问文件：所有者、文件自身公开，或任一祖先目录公开（继承公开）
+     * @param fileInfo 文件信息
+     * @param userId 用户ID，匿名访问时为null
+     * @return 是否可以访问
+     */
+    boolean canAccess(FileInfo fileInfo, Long userId);
+    
+    /**
+     * 判断文件是否对所有人公开：文件自身公开，或任一祖先目录公开（继承公开），与访问者无关
+     * @param fileInfo 文件信息
+     * @return 是否公开
+     */
+    boolean isPublic(FileInfo fileInfo);
+    
     /**
      * 创建文件夹
      * @param userId 用户ID
@@ -102,7 +228,7 @@ public interface FileService {
     FileInfo createFolder(Long userId, Long parentId, String folderName);
     
     /**
-     * 更新文件夹公开状态
+     * 更新文件夹公开状态（只写文件夹自身，子孙节点继承该状态）
      * @param folderId 文件夹ID
      * @param userId 用户ID
      * @param isPublic 是否公开
@@ -148,4 +274,12 @@ public interface FileService {
      * @return 文件信息
      */
     FileInfo completeChunkUpload(String uploadId, int totalChunks, Long userId);
+    
+    /**
+     * 取消分块上传，清理已上传的分块并释放预占空间
+     * @param uploadId 上传ID
+     * @param userId 用户ID
+     * @return 是否成功
+     */
+    boolean cancelChunkUpload(String uploadId, Long userId);
 } 
\ No newline at end of file
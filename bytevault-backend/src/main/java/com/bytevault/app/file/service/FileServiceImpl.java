@@ -3,17 +3,20 @@ package com.bytevault.app.file.service;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.bytevault.app.file.util.FileCursor;
+import com.bytevault.app.file.util.ImageUtils;
 import com.bytevault.app.mapper.FileMapper;
 import com.bytevault.app.mapper.UserMapper;
+import com.bytevault.app.model.CursorPage;
+import com.bytevault.app.model.DownloadManifest;
 import com.bytevault.app.model.FileInfo;
 import com.bytevault.app.model.User;
+import com.bytevault.app.search.document.FileDocument;
 import com.bytevault.app.search.service.FileSearchService;
 import com.bytevault.app.search.util.FileDocumentConverter;
 import io.minio.*;
-import io.minio.http.Method;
 import io.minio.messages.DeleteError;
 import io.minio.messages.DeleteObject;
-import io.minio.GetPresignedObjectUrlArgs;
 import io.minio.RemoveObjectsArgs;
 import io.minio.ListObjectsArgs;
 import io.minio.Result;
@@ -23,8 +26,14 @@ import io.minio.ComposeSource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.*;
@@ -43,6 +52,12 @@ public class FileServiceImpl implements FileService {
     private final UserMapper userMapper;
     private final RedisTemplate<String, Object> redisTemplate;
     private final FileSearchService fileSearchService;
+    private final PresignedUrlCache presignedUrlCache;
+    private final ThumbnailService thumbnailService;
+    private final FolderListingCache folderListingCache;
+    private final PublicFeedCache publicFeedCache;
+    private final StorageUsageService storageUsageService;
+    private final StringRedisTemplate stringRedisTemplate;
 
     @Value("${minio.userFilesBucketName}")
     private String userFilesBucket;
@@ -54,22 +69,72 @@ public class FileServiceImpl implements FileService {
     private static final String UPLOAD_ID_PREFIX = "chunk_upload:";
     private static final String UPLOAD_CHUNKS_PREFIX = "chunk_upload_chunks:";
     private static final String UPLOAD_INFO_PREFIX = "chunk_upload_info:";
+    private static final String UPLOAD_SIZES_PREFIX = "chunk_upload_sizes:";
+    
+    /**
+     * 记录分块大小，所有分块累计大小超过上传时声明的文件大小时拒绝（不写入）
+     * 同一分块重传时替换原来的大小
+     * KEYS[1]=分块大小哈希 ARGV[1]=分块索引 ARGV[2]=分块大小 ARGV[3]=声明的文件大小 ARGV[4]=有效期(秒)
+     * 返回 1 接受，0 超出声明大小
+     */
+    private static final RedisScript<Long> CHUNK_SIZE_SCRIPT = new DefaultRedisScript<>(
+            "local total = tonumber(ARGV[2]) " +
+            "local entries = redis.call('HGETALL', KEYS[1]) " +
+            "for i = 1, #entries, 2 do " +
+            "  if entries[i] ~= ARGV[1] then total = total + tonumber(entries[i + 1]) end " +
+            "end " +
+            "if total > tonumber(ARGV[3]) then return 0 end " +
+            "redis.call('HSET', KEYS[1], ARGV[1], ARGV[2]) " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[4]) " +
+            "return 1",
+            Long.class);
+    
+    // 游标分页的最大每页大小
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+    
+    // 数据库回退搜索时展开的公开目录数上限
+    private static final int MAX_PUBLIC_FOLDER_SCOPES = 200;
     
     // 上传过期时间（24小时）
     private static final long UPLOAD_EXPIRATION = 24 * 60 * 60;
     
+    // 单次批量删除MinIO对象的最大数量（S3 DeleteObjects上限）
+    private static final int REMOVE_OBJECTS_BATCH_SIZE = 1000;
+    
+    // 分段下载的默认分段大小及上下限
+    private static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final long MIN_SEGMENT_SIZE = 8L * 1024 * 1024;
+    private static final long MAX_SEGMENT_SIZE = 1024L * 1024 * 1024;
+    // 单个清单的最大分段数，超过时自动增大分段大小
+    private static final int MAX_SEGMENTS = 10_000;
+    
     public FileServiceImpl(MinioClient minioClient, FileMapper fileMapper, UserMapper userMapper, 
-                          RedisTemplate<String, Object> redisTemplate, FileSearchService fileSearchService) {
+                          RedisTemplate<String, Object> redisTemplate, FileSearchService fileSearchService,
+                          PresignedUrlCache presignedUrlCache, ThumbnailService thumbnailService,
+                          FolderListingCache folderListingCache, PublicFeedCache publicFeedCache,
+                          StorageUsageService storageUsageService, StringRedisTemplate stringRedisTemplate) {
         this.minioClient = minioClient;
         this.fileMapper = fileMapper;
         this.userMapper = userMapper;
         this.redisTemplate = redisTemplate;
         this.fileSearchService = fileSearchService;
+        this.presignedUrlCache = presignedUrlCache;
+        this.thumbnailService = thumbnailService;
+        this.folderListingCache = folderListingCache;
+        this.publicFeedCache = publicFeedCache;
+        this.storageUsageService = storageUsageService;
+        this.stringRedisTemplate = stringRedisTemplate;
     }
 
     @Override
     @Transactional
     public FileInfo uploadFile(MultipartFile file, Long userId, Long parentId, boolean isPublic) {
+        // 上传期间预占空间，事务结束后释放
+        String reservationId = "upload:" + UUID.randomUUID();
+        if (!storageUsageService.reserve(userId, reservationId, file.getSize())) {
+            throw new QuotaExceededException("存储空间不足");
+        }
+        storageUsageService.release(userId, reservationId);
         try {
             // 获取原始文件名
             String originalFilename = file.getOriginalFilename();
@@ -104,11 +169,20 @@ public class FileServiceImpl implements FileService {
             fileInfo.setUpdateTime(LocalDateTime.now());
             
             fileMapper.insert(fileInfo);
+            assignPath(fileInfo);
+            folderListingCache.invalidate(userId, parentId);
+            adjustAncestorAggregates(fileInfo, file.getSize(), 1, 1);
+            storageUsageService.recordChange(userId, file.getSize(), 1);
+            
+            // 图片文件后台生成缩略图
+            thumbnailService.generateAsync(fileInfo, minioObjectName);
             
             // 同步到ES索引
             try {
                 User user = userMapper.selectById(userId);
                 String username = user != null ? user.getUsername() : "unknown";
+                fileInfo.setInheritedPublic(isInheritedPublic(fileInfo));
+                publicFeedCache.update(fileInfo, username);
                 fileSearchService.indexFile(FileDocumentConverter.toFileDocument(fileInfo, username));
             } catch (Exception e) {
                 log.error("同步文件到ES索引失败: {}", fileInfo.getFilename(), e);
@@ -125,6 +199,13 @@ public class FileServiceImpl implements FileService {
     @Override
     @Transactional
     public List<FileInfo> uploadFolder(List<MultipartFile> files, List<String> relativePaths, Long userId, Long parentId, boolean isPublic) {
+        // 上传期间按总大小预占空间，事务结束后释放
+        long totalSize = files.stream().mapToLong(MultipartFile::getSize).sum();
+        String reservationId = "upload:" + UUID.randomUUID();
+        if (!storageUsageService.reserve(userId, reservationId, totalSize)) {
+            throw new QuotaExceededException("存储空间不足");
+        }
+        storageUsageService.release(userId, reservationId);
         try {
             List<FileInfo> uploadedFiles = new ArrayList<>();
             Map<String, Long> pathToFolderId = new HashMap<>();
@@ -225,12 +306,21 @@ public class FileServiceImpl implements FileService {
                 fileInfo.setUpdateTime(LocalDateTime.now());
                 
                 fileMapper.insert(fileInfo);
+                assignPath(fileInfo);
+                folderListingCache.invalidate(userId, currentParentId);
+                adjustAncestorAggregates(fileInfo, file.getSize(), 1, 1);
+                storageUsageService.recordChange(userId, file.getSize(), 1);
                 uploadedFiles.add(fileInfo);
                 
+                // 图片文件后台生成缩略图
+                thumbnailService.generateAsync(fileInfo, minioObjectName);
+                
                 // 同步到ES索引
                 try {
                     User user = userMapper.selectById(userId);
                     String username = user != null ? user.getUsername() : "unknown";
+                    fileInfo.setInheritedPublic(isInheritedPublic(fileInfo));
+                    publicFeedCache.update(fileInfo, username);
                     fileSearchService.indexFile(FileDocumentConverter.toFileDocument(fileInfo, username));
                 } catch (Exception e) {
                     log.error("同步文件到ES索引失败: {}", fileInfo.getFilename(), e);
@@ -263,47 +353,347 @@ public class FileServiceImpl implements FileService {
                 return false;
             }
             
-            // 如果是目录，递归删除子文件和子文件夹
-            if (fileInfo.getIsDir()) {
-                // 查询所有子文件和子文件夹
-                LambdaQueryWrapper<FileInfo> queryWrapper = new LambdaQueryWrapper<>();
-                queryWrapper.eq(FileInfo::getParentId, fileId)
-                           .eq(FileInfo::getUserId, userId)
-                           .eq(FileInfo::getDeleted, false);
-                List<FileInfo> childFiles = fileMapper.selectList(queryWrapper);
-                
-                // 递归删除所有子文件和子文件夹
-                for (FileInfo childFile : childFiles) {
-                    deleteFile(childFile.getId(), userId);
-                }
+            // 目录一次查询取出整个子树（优先按物化路径前缀，旧数据回退到递归CTE），文件只处理自身
+            List<FileInfo> candidates;
+            if (!fileInfo.getIsDir()) {
+                candidates = Collections.singletonList(fileInfo);
+            } else if (fileInfo.getPath() != null) {
+                candidates = fileMapper.selectSubtreeByPath(userId, fileInfo.getPath());
             } else {
-                // 如果是文件，从MinIO中删除
-                String minioObjectName = userId + "/" + fileInfo.getFilename();
-                minioClient.removeObject(
-                        RemoveObjectArgs.builder()
-                                .bucket(userFilesBucket)
-                                .object(minioObjectName)
-                                .build());
+                candidates = fileMapper.selectSubtree(userId, fileId);
+            }
+            if (candidates.isEmpty()) {
+                return false;
             }
             
-            // 使用MyBatis-Plus的deleteById直接进行逻辑删除
-            int deleteResult = fileMapper.deleteById(fileId);
+            // 锁定仍未删除的节点，用量只按本事务实际删除的节点扣减，并发删除同一子树不会重复扣减
+            List<FileInfo> nodes = fileMapper.selectLiveByIdsForUpdate(
+                    candidates.stream().map(FileInfo::getId).collect(Collectors.toList()));
+            if (nodes.isEmpty()) {
+                log.warn("文件已被删除: {}", fileId);
+                return false;
+            }
+            // 祖先目录按锁定后的根节点计算，删除期间根节点不会被并发移动
+            FileInfo root = nodes.stream().filter(node -> node.getId().equals(fileId)).findFirst().orElse(null);
+            if (root == null) {
+                log.warn("文件已被删除: {}", fileId);
+                return false;
+            }
+            List<Long> ids = nodes.stream().map(FileInfo::getId).collect(Collectors.toList());
+            
+            // 一条UPDATE逻辑删除已锁定的节点
+            int deleteResult = fileMapper.softDeleteByIds(ids);
+            
+            // 扣减存储用量
+            long freedBytes = 0;
+            long freedCount = 0;
+            for (FileInfo node : nodes) {
+                if (!node.getIsDir()) {
+                    freedBytes += node.getFileSize() != null ? node.getFileSize() : 0;
+                    freedCount++;
+                }
+            }
+            storageUsageService.recordChange(userId, -freedBytes, -freedCount);
+            // 祖先目录聚合量与用量在同一事务中按实际删除的节点调整
+            adjustAncestorAggregates(root, -freedBytes, (int) -freedCount, -1);
+            
+            // 所在目录及被删除的子目录的列表缓存失效
+            List<Long> affectedFolders = nodes.stream()
+                    .filter(FileInfo::getIsDir)
+                    .map(FileInfo::getId)
+                    .collect(Collectors.toCollection(ArrayList::new));
+            affectedFolders.add(root.getParentId() != null ? root.getParentId() : 0L);
+            
+            // 收集MinIO中的文件及缩略图
+            List<String> objectNames = new ArrayList<>();
+            for (FileInfo node : nodes) {
+                if (node.getIsDir()) {
+                    continue;
+                }
+                objectNames.add(userId + "/" + node.getFilename());
+                if (ImageUtils.isImage(node.getFileType())) {
+                    objectNames.addAll(thumbnailService.getThumbnailObjectNames(node.getId()));
+                }
+            }
             
-            // 从ES索引中删除
-            if (deleteResult > 0) {
+            // 列表缓存及公开广场快照自行推迟到事务提交后更新，不能在提交回调中再注册回调
+            folderListingCache.invalidate(userId, affectedFolders);
+            publicFeedCache.remove(ids);
+            
+            // 对象删除及索引更新在事务提交后执行，事务回滚时文件内容不受影响
+            runAfterCommit(() -> {
                 try {
-                    fileSearchService.deleteFile(fileId);
+                    for (FileInfo node : nodes) {
+                        if (!node.getIsDir()) {
+                            presignedUrlCache.evict(userFilesBucket, userId + "/" + node.getFilename());
+                        }
+                    }
+                    removeObjects(objectNames);
+                    
+                    // 从ES索引中批量删除
+                    fileSearchService.deleteFiles(ids);
                 } catch (Exception e) {
-                    log.error("从ES索引删除文件失败: {}", fileId, e);
+                    log.error("删除文件后清理对象及索引失败: {}", e.getMessage(), e);
                 }
-            }
+            });
             
-            log.info("文件删除操作: {}, 用户ID: {}, 删除结果: {}", fileId, userId, deleteResult);
-            return deleteResult > 0;
+            log.info("文件删除操作: {}, 用户ID: {}, 删除节点数: {}, 删除对象数: {}", fileId, userId, deleteResult, objectNames.size());
+            return true;
         } catch (Exception e) {
             log.error("文件删除失败: {}", e.getMessage(), e);
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return false;
+        }
+    }
+    
+    @Override
+    @Transactional
+    public boolean moveFile(Long fileId, Long userId, Long targetParentId) {
+        try {
+            FileInfo fileInfo = fileMapper.selectById(fileId);
+            if (fileInfo == null) {
+                log.warn("文件不存在: {}", fileId);
+                return false;
+            }
+            
+            // 检查权限
+            if (!fileInfo.getUserId().equals(userId)) {
+                log.warn("无权限移动文件: {}, 用户ID: {}", fileId, userId);
+                return false;
+            }
+            
+            Long newParentId = targetParentId != null ? targetParentId : 0L;
+            if (newParentId.equals(fileInfo.getParentId())) {
+                return true;
+            }
+            if (fileInfo.getPath() == null) {
+                log.warn("文件物化路径尚未回填，无法移动: {}", fileId);
+                return false;
+            }
+            
+            // 计算目标目录路径
+            String parentPath = "/";
+            if (newParentId > 0) {
+                FileInfo targetFolder = fileMapper.selectById(newParentId);
+                if (targetFolder == null || !targetFolder.getIsDir() || !targetFolder.getUserId().equals(userId)) {
+                    log.warn("目标目录不存在或无权限: {}, 用户ID: {}", newParentId, userId);
+                    return false;
+                }
+                if (targetFolder.getPath() == null) {
+                    log.warn("目标目录物化路径尚未回填，无法移动: {}", newParentId);
+                    return false;
+                }
+                // 不能移动到自身或自身的子孙目录下
+                if (targetFolder.getPath().startsWith(fileInfo.getPath())) {
+                    log.warn("不能将目录移动到自身或其子目录下: {} -> {}", fileId, newParentId);
+                    return false;
+                }
+                parentPath = targetFolder.getPath();
+            }
+            
+            // 目标目录下已有同名文件或文件夹时拒绝移动
+            LambdaQueryWrapper<FileInfo> queryWrapper = new LambdaQueryWrapper<>();
+            queryWrapper.eq(FileInfo::getUserId, userId)
+                       .eq(FileInfo::getParentId, newParentId)
+                       .eq(FileInfo::getFilename, fileInfo.getFilename())
+                       .eq(FileInfo::getDeleted, false)
+                       .ne(FileInfo::getId, fileId);
+            if (fileMapper.selectCount(queryWrapper) > 0) {
+                log.warn("目标目录下已存在同名文件: {}, 目标目录: {}", fileInfo.getFilename(), newParentId);
+                return false;
+            }
+            
+            String oldPath = fileInfo.getPath();
+            String newPath = parentPath + fileId + "/";
+            Long oldParentId = fileInfo.getParentId();
+            
+            // 子树的聚合量从原祖先目录移出
+            long movedSize = fileInfo.getIsDir() ? fileInfo.getTotalSize()
+                    : (fileInfo.getFileSize() != null ? fileInfo.getFileSize() : 0);
+            int movedFiles = fileInfo.getIsDir() ? fileInfo.getFileCount() : 1;
+            adjustAncestorAggregates(fileInfo, -movedSize, -movedFiles, -1);
+            
+            fileInfo.setParentId(newParentId);
+            fileInfo.setUpdateTime(LocalDateTime.now());
+            fileMapper.updateById(fileInfo);
+            
+            // 一条UPDATE改写整个子树的路径前缀
+            int affected = fileMapper.replacePathPrefix(userId, oldPath, newPath);
+            fileInfo.setPath(newPath);
+            
+            // 子树的聚合量累加到新祖先目录
+            adjustAncestorAggregates(fileInfo, movedSize, movedFiles, 1);
+            folderListingCache.invalidate(userId, Arrays.asList(oldParentId != null ? oldParentId : 0L, newParentId));
+            
+            // 同步ES中子树的路径及继承公开状态
+            if (fileInfo.getIsDir()) {
+                fileSearchService.replacePathPrefix(oldPath, newPath);
+            }
+            
+            // 更新ES索引中的父目录
+            try {
+                User user = userMapper.selectById(userId);
+                String username = user != null ? user.getUsername() : "unknown";
+                fileInfo.setInheritedPublic(isInheritedPublic(fileInfo));
+                publicFeedCache.update(fileInfo, username);
+                fileSearchService.indexFile(FileDocumentConverter.toFileDocument(fileInfo, username));
+            } catch (Exception e) {
+                log.error("更新ES索引失败: {}", fileInfo.getFilename(), e);
+            }
+            
+            syncInheritedPublic(fileInfo);
+            
+            log.info("文件移动成功: {} -> {}, 用户ID: {}, 更新路径节点数: {}", fileId, newParentId, userId, affected);
+            return true;
+        } catch (Exception e) {
+            log.error("文件移动失败: {}", e.getMessage(), e);
+            throw new RuntimeException("文件移动失败", e);
+        }
+    }
+    
+    @Override
+    public boolean canAccess(FileInfo fileInfo, Long userId) {
+        if (fileInfo == null) {
             return false;
         }
+        if (fileInfo.getUserId().equals(userId) || "public".equals(fileInfo.getVisibility())) {
+            return true;
+        }
+        return isInheritedPublic(fileInfo);
+    }
+    
+    @Override
+    public boolean isPublic(FileInfo fileInfo) {
+        return fileInfo != null && ("public".equals(fileInfo.getVisibility()) || isInheritedPublic(fileInfo));
+    }
+    
+    /**
+     * 判断文件是否从公开的祖先目录继承了公开状态
+     * 祖先ID直接从物化路径解析，一次主键IN查询完成判断
+     */
+    private boolean isInheritedPublic(FileInfo fileInfo) {
+        List<Long> ancestorIds = parseAncestorIds(fileInfo);
+        return !ancestorIds.isEmpty() && fileMapper.countPublicFolders(ancestorIds) > 0;
+    }
+    
+    /**
+     * 在当前事务提交后执行，没有事务时立即执行
+     * 回调中不能调用同样会推迟到提交后的方法（如列表缓存失效），提交阶段新注册的回调不会执行
+     */
+    private void runAfterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+    
+    /**
+     * 从物化路径解析祖先目录ID（从根到直接父目录，不含自身），路径尚未回填时返回空列表
+     */
+    private List<Long> parseAncestorIds(FileInfo fileInfo) {
+        List<Long> ancestorIds = new ArrayList<>();
+        if (fileInfo.getPath() != null) {
+            for (String part : fileInfo.getPath().split("/")) {
+                if (!part.isEmpty() && !part.equals(String.valueOf(fileInfo.getId()))) {
+                    ancestorIds.add(Long.valueOf(part));
+                }
+            }
+        }
+        return ancestorIds;
+    }
+    
+    /**
+     * 节点新增、删除、覆盖或移入移出后增量维护祖先目录的聚合信息：
+     * 全部祖先目录累加子树的大小和文件数，直接父目录累加子项数。
+     * 祖先目录在上级列表中展示的大小随之变化，这些列表的缓存一并失效
+     * @param node 发生变化的节点（使用其当前物化路径定位祖先）
+     * @param deltaSize 大小变化量（字节）
+     * @param deltaFiles 文件数变化量
+     * @param deltaChildren 直接父目录的子项数变化量
+     */
+    private void adjustAncestorAggregates(FileInfo node, long deltaSize, int deltaFiles, int deltaChildren) {
+        List<Long> ancestorIds = parseAncestorIds(node);
+        if (ancestorIds.isEmpty() || (deltaSize == 0 && deltaFiles == 0 && deltaChildren == 0)) {
+            return;
+        }
+        if (deltaSize != 0 || deltaFiles != 0) {
+            fileMapper.adjustFolderAggregates(ancestorIds, deltaSize, deltaFiles);
+        }
+        if (deltaChildren != 0) {
+            fileMapper.adjustChildCount(ancestorIds.get(ancestorIds.size() - 1), deltaChildren);
+        }
+        List<Long> affectedFolders = new ArrayList<>(ancestorIds.size());
+        affectedFolders.add(0L);
+        affectedFolders.addAll(ancestorIds.subList(0, ancestorIds.size() - 1));
+        // invalidate 在事务中会自行推迟到提交后执行
+        folderListingCache.invalidate(node.getUserId(), affectedFolders);
+    }
+    
+    /**
+     * 同步ES中目录子树的继承公开状态
+     * 目录自身公开或继承公开时整棵子树都继承公开；否则先整体清除，再为子树中自身公开的目录重新标记
+     */
+    private void syncInheritedPublic(FileInfo folder) {
+        if (!folder.getIsDir() || folder.getPath() == null) {
+            return;
+        }
+        boolean inherited = "public".equals(folder.getVisibility()) || Boolean.TRUE.equals(folder.getInheritedPublic());
+        fileSearchService.updateInheritedPublic(folder.getPath(), folder.getId(), inherited);
+        if (!inherited) {
+            for (FileInfo publicFolder : fileMapper.selectPublicFoldersInSubtree(folder.getUserId(), folder.getPath())) {
+                fileSearchService.updateInheritedPublic(publicFolder.getPath(), publicFolder.getId(), true);
+            }
+        }
+    }
+    
+    /**
+     * 写入新节点的物化路径: 父目录路径 + 自身ID + "/"
+     * 父目录路径尚未回填时保持为空，子树查询回退到递归CTE
+     */
+    private void assignPath(FileInfo fileInfo) {
+        String parentPath = "/";
+        if (fileInfo.getParentId() != null && fileInfo.getParentId() > 0) {
+            parentPath = fileMapper.selectPathById(fileInfo.getParentId());
+            if (parentPath == null) {
+                log.warn("父目录物化路径尚未回填: {}", fileInfo.getParentId());
+                return;
+            }
+        }
+        String path = parentPath + fileInfo.getId() + "/";
+        fileMapper.updatePath(fileInfo.getId(), path);
+        fileInfo.setPath(path);
+    }
+    
+    /**
+     * 批量删除MinIO对象
+     * removeObjects是惰性执行的，必须遍历返回结果才会真正发出删除请求
+     */
+    private void removeObjects(List<String> objectNames) {
+        for (int from = 0; from < objectNames.size(); from += REMOVE_OBJECTS_BATCH_SIZE) {
+            List<DeleteObject> batch = objectNames.subList(from, Math.min(objectNames.size(), from + REMOVE_OBJECTS_BATCH_SIZE))
+                    .stream()
+                    .map(DeleteObject::new)
+                    .collect(Collectors.toList());
+            Iterable<Result<DeleteError>> results = minioClient.removeObjects(
+                    RemoveObjectsArgs.builder()
+                            .bucket(userFilesBucket)
+                            .objects(batch)
+                            .build());
+            for (Result<DeleteError> result : results) {
+                try {
+                    DeleteError error = result.get();
+                    log.error("删除MinIO对象失败: {}, 原因: {}", error.objectName(), error.message());
+                } catch (Exception e) {
+                    log.error("删除MinIO对象失败: {}", e.getMessage(), e);
+                }
+            }
+        }
     }
 
     @Override
@@ -316,8 +706,8 @@ public class FileServiceImpl implements FileService {
                 return null;
             }
             
-            // 检查权限
-            if (!fileInfo.getUserId().equals(userId) && !"public".equals(fileInfo.getVisibility())) {
+            // 检查权限（所有者、自身公开或继承公开）
+            if (!canAccess(fileInfo, userId)) {
                 log.warn("无权限下载文件: {}, 用户ID: {}", fileId, userId);
                 return null;
             }
@@ -328,17 +718,8 @@ public class FileServiceImpl implements FileService {
                 return null;
             }
             
-            // 构建MinIO对象名称
-            String minioObjectName = userId + "/" + fileInfo.getFilename();
-            
-            // 生成预签名URL
-            String url = minioClient.getPresignedObjectUrl(
-                    GetPresignedObjectUrlArgs.builder()
-                            .method(Method.GET)
-                            .bucket(userFilesBucket)
-                            .object(minioObjectName)
-                            .expiry(1, TimeUnit.HOURS) // URL有效期1小时
-                            .build());
+            // 生成预签名URL（URL有效期1小时，有效期内复用缓存）
+            String url = presignedUrlCache.getDownloadUrl(userFilesBucket, buildObjectName(fileInfo));
             
             log.info("生成文件下载URL: {}, 文件ID: {}", url, fileId);
             return url;
@@ -348,31 +729,83 @@ public class FileServiceImpl implements FileService {
         }
     }
 
+    @Override
+    public DownloadManifest getDownloadManifest(Long fileId, Long userId, Long segmentSize) {
+        try {
+            // 查询文件信息
+            FileInfo fileInfo = fileMapper.selectById(fileId);
+            if (fileInfo == null) {
+                log.warn("文件不存在: {}", fileId);
+                return null;
+            }
+            
+            // 检查权限（所有者、自身公开或继承公开）
+            if (!canAccess(fileInfo, userId)) {
+                log.warn("无权限下载文件: {}, 用户ID: {}", fileId, userId);
+                return null;
+            }
+            
+            if (fileInfo.getIsDir()) {
+                log.warn("不能下载目录: {}", fileId);
+                return null;
+            }
+            
+            // 以MinIO中对象的实际大小和ETag为准，数据库记录可能滞后于覆盖上传
+            String objectName = buildObjectName(fileInfo);
+            StatObjectResponse stat = minioClient.statObject(
+                    StatObjectArgs.builder()
+                            .bucket(userFilesBucket)
+                            .object(objectName)
+                            .build());
+            long fileSize = stat.size();
+            
+            // 计算分段大小
+            long effectiveSegmentSize = segmentSize != null ? segmentSize : DEFAULT_SEGMENT_SIZE;
+            effectiveSegmentSize = Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, effectiveSegmentSize));
+            if ((fileSize + effectiveSegmentSize - 1) / effectiveSegmentSize > MAX_SEGMENTS) {
+                effectiveSegmentSize = (fileSize + MAX_SEGMENTS - 1) / MAX_SEGMENTS;
+            }
+            
+            List<DownloadManifest.Segment> segments = new ArrayList<>();
+            int index = 0;
+            for (long offset = 0; offset < fileSize; offset += effectiveSegmentSize) {
+                long length = Math.min(effectiveSegmentSize, fileSize - offset);
+                segments.add(new DownloadManifest.Segment(index++, offset, length,
+                        "bytes=" + offset + "-" + (offset + length - 1)));
+            }
+            
+            return DownloadManifest.builder()
+                    .fileId(fileId)
+                    .filename(fileInfo.getFilename())
+                    .contentType(stat.contentType())
+                    .fileSize(fileSize)
+                    .etag(stat.etag())
+                    .url(presignedUrlCache.getDownloadUrl(userFilesBucket, objectName))
+                    .proxyUrl("/api/files/proxy/" + fileId)
+                    .segmentSize(effectiveSegmentSize)
+                    .segments(segments)
+                    .build();
+        } catch (Exception e) {
+            log.error("获取下载清单失败: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
     @Override
     public IPage<FileInfo> getUserFiles(Long userId, Long parentId, int page, int size) {
+        return getUserFiles(userId, parentId, page, size, true);
+    }
+
+    @Override
+    public IPage<FileInfo> getUserFiles(Long userId, Long parentId, int page, int size, boolean withDownloadUrl) {
         try {
-            Page<FileInfo> pageParam = new Page<>(page, size);
-            IPage<FileInfo> result = fileMapper.selectUserFiles(pageParam, userId, parentId);
+            // 目录列表按版本戳缓存，目录下有修改时自动失效
+            IPage<FileInfo> result = folderListingCache.getOrLoad(userId, parentId, page, size,
+                    () -> fileMapper.selectUserFiles(new Page<>(page, size), userId, parentId));
             
             // 为每个文件生成下载URL
-            for (FileInfo fileInfo : result.getRecords()) {
-                if (!fileInfo.getIsDir()) {
-                    try {
-                        // 构建MinIO对象名称
-                        String minioObjectName = fileInfo.getUserId() + "/" + fileInfo.getFilename();
-                        
-                        String url = minioClient.getPresignedObjectUrl(
-                                GetPresignedObjectUrlArgs.builder()
-                                        .method(Method.GET)
-                                        .bucket(userFilesBucket)
-                                        .object(minioObjectName)
-                                        .expiry(1, TimeUnit.HOURS)
-                                        .build());
-                        fileInfo.setDownloadUrl(url);
-                    } catch (Exception e) {
-                        log.error("生成文件下载URL失败: {}", e.getMessage(), e);
-                    }
-                }
+            if (withDownloadUrl) {
+                fillDownloadUrls(result.getRecords(), userId);
             }
             
             return result;
@@ -384,31 +817,102 @@ public class FileServiceImpl implements FileService {
 
     @Override
     public IPage<FileInfo> getPublicFiles(int page, int size) {
+        return getPublicFiles(page, size, true);
+    }
+
+    @Override
+    public IPage<FileInfo> getPublicFiles(int page, int size, boolean withDownloadUrl) {
         try {
-            Page<FileInfo> pageParam = new Page<>(page, size);
-            IPage<FileInfo> result = fileMapper.selectPublicFiles(pageParam);
+            // 热点页直接读取Redis快照，超出快照范围时查询数据库
+            IPage<FileInfo> result = publicFeedCache.getPage(page, size);
+            if (result == null) {
+                result = fileMapper.selectPublicFiles(new Page<>(page, size), null);
+            }
             
             // 为每个文件生成下载URL
+            if (withDownloadUrl) {
+                fillDownloadUrls(result.getRecords(), null);
+            }
+            
+            return result;
+        } catch (Exception e) {
+            log.error("获取公开文件列表失败: {}", e.getMessage(), e);
+            throw new RuntimeException("获取公开文件列表失败", e);
+        }
+    }
+
+    @Override
+    public IPage<FileInfo> getPublicFolderFiles(Long folderId, int page, int size, boolean withDownloadUrl) {
+        FileInfo folder = fileMapper.selectById(folderId);
+        if (folder == null || !folder.getIsDir() || !canAccess(folder, null)) {
+            log.warn("目录不存在或不是公开目录: {}", folderId);
+            return null;
+        }
+        try {
+            Page<FileInfo> pageParam = new Page<>(page, size);
+            IPage<FileInfo> result = fileMapper.selectPublicFiles(pageParam, folderId);
+            
+            // 公开目录下的子节点都继承公开状态
             for (FileInfo fileInfo : result.getRecords()) {
-                if (!fileInfo.getIsDir()) {
-                    try {
-                        // 构建MinIO对象名称
-                        String minioObjectName = fileInfo.getUserId() + "/" + fileInfo.getFilename();
-                        
-                        String url = minioClient.getPresignedObjectUrl(
-                                GetPresignedObjectUrlArgs.builder()
-                                        .method(Method.GET)
-                                        .bucket(userFilesBucket)
-                                        .object(minioObjectName)
-                                        .expiry(1, TimeUnit.HOURS)
-                                        .build());
-                        fileInfo.setDownloadUrl(url);
-                    } catch (Exception e) {
-                        log.error("生成文件下载URL失败: {}", e.getMessage(), e);
-                    }
+                if (!"public".equals(fileInfo.getVisibility())) {
+                    fileInfo.setInheritedPublic(true);
                 }
             }
             
+            if (withDownloadUrl) {
+                fillDownloadUrls(result.getRecords(), null);
+            }
+            
+            return result;
+        } catch (Exception e) {
+            log.error("获取公开目录文件列表失败: {}", e.getMessage(), e);
+            throw new RuntimeException("获取公开目录文件列表失败", e);
+        }
+    }
+
+    @Override
+    public CursorPage<FileInfo> getUserFilesByCursor(Long userId, Long parentId, String cursor, int size,
+                                                     boolean withDownloadUrl, boolean withTotal) {
+        FileCursor position = FileCursor.decode(cursor);
+        int limit = normalizeCursorPageSize(size);
+        try {
+            List<FileInfo> rows = fileMapper.selectUserFilesByCursor(userId, parentId,
+                    position != null ? position.getIsDir() : null,
+                    position != null ? position.getUpdateTime() : null,
+                    position != null ? position.getId() : null,
+                    limit + 1);
+            
+            // 总数只在第一页统计，翻页时由客户端沿用
+            Long total = withTotal && position == null ? fileMapper.countUserFiles(userId, parentId) : null;
+            CursorPage<FileInfo> result = buildCursorPage(rows, limit, total);
+            
+            if (withDownloadUrl) {
+                fillDownloadUrls(result.getRecords(), userId);
+            }
+            
+            return result;
+        } catch (Exception e) {
+            log.error("获取用户文件列表失败: {}", e.getMessage(), e);
+            throw new RuntimeException("获取用户文件列表失败", e);
+        }
+    }
+
+    @Override
+    public CursorPage<FileInfo> getPublicFilesByCursor(String cursor, int size, boolean withDownloadUrl, boolean withTotal) {
+        FileCursor position = FileCursor.decode(cursor);
+        int limit = normalizeCursorPageSize(size);
+        try {
+            List<FileInfo> rows = fileMapper.selectPublicFilesByCursor(
+                    position != null ? position.getUpdateTime() : null,
+                    position != null ? position.getId() : null,
+                    limit + 1);
+            
+            CursorPage<FileInfo> result = buildCursorPage(rows, limit, withTotal ? publicFeedCache.getTotal() : null);
+            
+            if (withDownloadUrl) {
+                fillDownloadUrls(result.getRecords(), null);
+            }
+            
             return result;
         } catch (Exception e) {
             log.error("获取公开文件列表失败: {}", e.getMessage(), e);
@@ -416,36 +920,151 @@ public class FileServiceImpl implements FileService {
         }
     }
 
+    @Override
+    public CursorPage<FileInfo> getPublicFolderFilesByCursor(Long folderId, String cursor, int size,
+                                                             boolean withDownloadUrl, boolean withTotal) {
+        FileCursor position = FileCursor.decode(cursor);
+        FileInfo folder = fileMapper.selectById(folderId);
+        if (folder == null || !folder.getIsDir() || !canAccess(folder, null)) {
+            log.warn("目录不存在或不是公开目录: {}", folderId);
+            return null;
+        }
+        int limit = normalizeCursorPageSize(size);
+        try {
+            // 子节点与目录属于同一用户，复用目录列表查询及其索引
+            List<FileInfo> rows = fileMapper.selectUserFilesByCursor(folder.getUserId(), folderId,
+                    position != null ? position.getIsDir() : null,
+                    position != null ? position.getUpdateTime() : null,
+                    position != null ? position.getId() : null,
+                    limit + 1);
+            
+            Long total = withTotal && position == null ? fileMapper.countUserFiles(folder.getUserId(), folderId) : null;
+            CursorPage<FileInfo> result = buildCursorPage(rows, limit, total);
+            
+            // 公开目录下的子节点都继承公开状态
+            for (FileInfo fileInfo : result.getRecords()) {
+                if (!"public".equals(fileInfo.getVisibility())) {
+                    fileInfo.setInheritedPublic(true);
+                }
+            }
+            
+            if (withDownloadUrl) {
+                fillDownloadUrls(result.getRecords(), null);
+            }
+            
+            return result;
+        } catch (Exception e) {
+            log.error("获取公开目录文件列表失败: {}", e.getMessage(), e);
+            throw new RuntimeException("获取公开目录文件列表失败", e);
+        }
+    }
+
+    @Override
+    public CursorPage<FileInfo> searchFilesByCursor(Long userId, String keyword, String cursor, int size, boolean withDownloadUrl) {
+        FileCursor position = FileCursor.decode(cursor);
+        int limit = normalizeCursorPageSize(size);
+        try {
+            LocalDateTime updateTime = position != null ? position.getUpdateTime() : null;
+            Long id = position != null ? position.getId() : null;
+            List<FileInfo> rows = searchFilesInIndexByCursor(userId, keyword, updateTime, id, limit + 1);
+            if (rows == null) {
+                // ES不可用时回退到数据库模糊查询，两者的游标排序键相同，可以在分页中途切换
+                rows = fileMapper.searchFilesByCursor(userId, keyword, selectPublicFolderScopes(),
+                        updateTime, id, limit + 1);
+            }
+            
+            CursorPage<FileInfo> result = buildCursorPage(rows, limit, null);
+            
+            // 既不属于当前用户也不是自身公开的结果，是通过公开的祖先目录命中的
+            for (FileInfo fileInfo : result.getRecords()) {
+                if (!fileInfo.getUserId().equals(userId) && !"public".equals(fileInfo.getVisibility())) {
+                    fileInfo.setInheritedPublic(true);
+                }
+            }
+            
+            if (withDownloadUrl) {
+                fillDownloadUrls(result.getRecords(), userId);
+            }
+            
+            return result;
+        } catch (Exception e) {
+            log.error("搜索文件失败: {}", e.getMessage(), e);
+            throw new RuntimeException("搜索文件失败", e);
+        }
+    }
+
+    /**
+     * 查询公开目录作为数据库回退搜索的继承公开范围，只取最近更新的 MAX_PUBLIC_FOLDER_SCOPES 个，
+     * 查询条件不会随全站公开目录数增长；嵌套在其他公开目录下的目录已被外层前缀覆盖，不再重复
+     */
+    private List<FileInfo> selectPublicFolderScopes() {
+        List<FileInfo> folders = fileMapper.selectPublicFolderPaths(MAX_PUBLIC_FOLDER_SCOPES);
+        if (folders.size() >= MAX_PUBLIC_FOLDER_SCOPES) {
+            log.warn("公开目录数达到回退搜索上限 {}，更早的公开目录下的文件不会被搜到", MAX_PUBLIC_FOLDER_SCOPES);
+        }
+        folders.removeIf(folder -> folder.getPath() == null);
+        folders.sort(Comparator.comparing(FileInfo::getUserId).thenComparing(FileInfo::getPath));
+        List<FileInfo> scopes = new ArrayList<>(folders.size());
+        FileInfo last = null;
+        for (FileInfo folder : folders) {
+            if (last != null && last.getUserId().equals(folder.getUserId()) && folder.getPath().startsWith(last.getPath())) {
+                continue;
+            }
+            scopes.add(folder);
+            last = folder;
+        }
+        return scopes;
+    }
+
+    private int normalizeCursorPageSize(int size) {
+        return Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
+    }
+
+    /**
+     * 根据多查询的一条记录判断是否还有下一页，并生成下一页游标
+     * @param rows 查询结果（最多 limit + 1 条）
+     * @param limit 每页大小
+     * @param total 总数，可为null
+     */
+    private CursorPage<FileInfo> buildCursorPage(List<FileInfo> rows, int limit, Long total) {
+        boolean hasMore = rows.size() > limit;
+        List<FileInfo> records = hasMore ? new ArrayList<>(rows.subList(0, limit)) : rows;
+        String nextCursor = hasMore ? FileCursor.encode(records.get(records.size() - 1)) : null;
+        return CursorPage.<FileInfo>builder()
+                .records(records)
+                .nextCursor(nextCursor)
+                .hasMore(hasMore)
+                .size(limit)
+                .total(total)
+                .build();
+    }
+
     @Override
     public IPage<FileInfo> searchFiles(Long userId, String keyword, int page, int size) {
+        return searchFiles(userId, keyword, page, size, true);
+    }
+
+    @Override
+    public IPage<FileInfo> searchFiles(Long userId, String keyword, int page, int size, boolean withDownloadUrl) {
         try {
-            Page<FileInfo> pageParam = new Page<>(page, size);
-            IPage<FileInfo> result = fileMapper.searchFiles(pageParam, userId, keyword);
+            IPage<FileInfo> result = searchFilesInIndex(userId, keyword, page, size);
+            if (result == null) {
+                // ES不可用时回退到数据库模糊查询
+                result = fileMapper.searchFiles(new Page<>(page, size), userId, keyword, selectPublicFolderScopes());
+            }
             
-            // 为每个文件生成下载URL
+            // 既不属于当前用户也不是自身公开的结果，是通过公开的祖先目录命中的
             for (FileInfo fileInfo : result.getRecords()) {
-                if (!fileInfo.getIsDir()) {
-                    try {
-                        // 只为用户有权限访问的文件生成下载URL
-                        if (fileInfo.getUserId().equals(userId) || "public".equals(fileInfo.getVisibility())) {
-                            // 构建MinIO对象名称
-                            String minioObjectName = fileInfo.getUserId() + "/" + fileInfo.getFilename();
-                            
-                            String url = minioClient.getPresignedObjectUrl(
-                                    GetPresignedObjectUrlArgs.builder()
-                                            .method(Method.GET)
-                                            .bucket(userFilesBucket)
-                                            .object(minioObjectName)
-                                            .expiry(1, TimeUnit.HOURS)
-                                            .build());
-                            fileInfo.setDownloadUrl(url);
-                        }
-                    } catch (Exception e) {
-                        log.error("生成文件下载URL失败: {}", e.getMessage(), e);
-                    }
+                if (!fileInfo.getUserId().equals(userId) && !"public".equals(fileInfo.getVisibility())) {
+                    fileInfo.setInheritedPublic(true);
                 }
             }
             
+            // 为每个文件生成下载URL
+            if (withDownloadUrl) {
+                fillDownloadUrls(result.getRecords(), userId);
+            }
+            
             return result;
         } catch (Exception e) {
             log.error("搜索文件失败: {}", e.getMessage(), e);
@@ -453,6 +1072,69 @@ public class FileServiceImpl implements FileService {
         }
     }
 
+    /**
+     * 通过ES搜索用户可访问的文件，并转换为与数据库查询相同的分页结构
+     * @return 分页结果，ES查询失败时返回null
+     */
+    /**
+     * 通过ES游标（search_after）搜索用户可访问的文件，ES不可用时返回null
+     */
+    private List<FileInfo> searchFilesInIndexByCursor(Long userId, String keyword, LocalDateTime updateTime, Long id, int limit) {
+        try {
+            return fileSearchService.searchAccessibleFilesAfter(userId, keyword, updateTime, id, limit).stream()
+                    .map(FileDocumentConverter::toFileInfo)
+                    .collect(Collectors.toList());
+        } catch (Exception e) {
+            log.warn("ES游标搜索失败，回退到数据库查询: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    private IPage<FileInfo> searchFilesInIndex(Long userId, String keyword, int page, int size) {
+        try {
+            org.springframework.data.domain.Page<FileDocument> hits =
+                    fileSearchService.searchAccessibleFiles(userId, keyword, Math.max(page - 1, 0), size);
+            Page<FileInfo> result = new Page<>(page, size, hits.getTotalElements());
+            result.setRecords(hits.getContent().stream()
+                    .map(FileDocumentConverter::toFileInfo)
+                    .collect(Collectors.toList()));
+            return result;
+        } catch (Exception e) {
+            log.warn("ES搜索失败，回退到数据库查询: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 为列表中的文件填充下载URL
+     * 只为查看者有权限访问的文件生成URL，签名结果在有效期内复用
+     * @param files 文件列表
+     * @param viewerId 查看者用户ID，匿名访问时为null
+     */
+    private void fillDownloadUrls(List<FileInfo> files, Long viewerId) {
+        for (FileInfo fileInfo : files) {
+            if (fileInfo.getIsDir()) {
+                continue;
+            }
+            if (!fileInfo.getUserId().equals(viewerId) && !"public".equals(fileInfo.getVisibility())
+                    && !Boolean.TRUE.equals(fileInfo.getInheritedPublic())) {
+                continue;
+            }
+            try {
+                fileInfo.setDownloadUrl(presignedUrlCache.getDownloadUrl(userFilesBucket, buildObjectName(fileInfo)));
+            } catch (Exception e) {
+                log.error("生成文件下载URL失败: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 构建文件在MinIO中的对象名: 所有者用户ID/文件名
+     */
+    private String buildObjectName(FileInfo fileInfo) {
+        return fileInfo.getUserId() + "/" + fileInfo.getFilename();
+    }
+
     @Override
     @Transactional
     public boolean updateFilePublicStatus(Long fileId, Long userId, boolean isPublic) {
@@ -475,11 +1157,14 @@ public class FileServiceImpl implements FileService {
             fileInfo.setUpdateTime(LocalDateTime.now());
             
             fileMapper.updateById(fileInfo);
+            folderListingCache.invalidate(userId, fileInfo.getParentId());
             
             // 更新ES索引
             try {
                 User user = userMapper.selectById(userId);
                 String username = user != null ? user.getUsername() : "unknown";
+                fileInfo.setInheritedPublic(isInheritedPublic(fileInfo));
+                publicFeedCache.update(fileInfo, username);
                 fileSearchService.indexFile(FileDocumentConverter.toFileDocument(fileInfo, username));
             } catch (Exception e) {
                 log.error("更新ES索引失败: {}", fileInfo.getFilename(), e);
@@ -531,11 +1216,16 @@ public class FileServiceImpl implements FileService {
             folder.setUpdateTime(LocalDateTime.now());
             
             fileMapper.insert(folder);
+            assignPath(folder);
+            folderListingCache.invalidate(userId, parentId);
+            adjustAncestorAggregates(folder, 0, 0, 1);
             
             // 同步到ES索引
             try {
                 User user = userMapper.selectById(userId);
                 String username = user != null ? user.getUsername() : "unknown";
+                folder.setInheritedPublic(isInheritedPublic(folder));
+                publicFeedCache.update(folder, username);
                 fileSearchService.indexFile(FileDocumentConverter.toFileDocument(folder, username));
             } catch (Exception e) {
                 log.error("同步文件夹到ES索引失败: {}", folder.getFilename(), e);
@@ -550,7 +1240,6 @@ public class FileServiceImpl implements FileService {
     }
 
     @Override
-    @Transactional
     public boolean updateFolderPublicStatus(Long folderId, Long userId, boolean isPublic) {
         try {
             // 查询文件夹信息
@@ -572,31 +1261,25 @@ public class FileServiceImpl implements FileService {
                 return false;
             }
             
-            // 更新当前文件夹的公开状态
-            boolean currentFolderUpdated = updateFilePublicStatus(folderId, userId, isPublic);
-            if (!currentFolderUpdated) {
-                return false;
-            }
+            // 只更新文件夹自身，子孙节点在读取和权限校验时继承文件夹的公开状态
+            folder.setVisibility(isPublic ? "public" : "private");
+            folder.setUpdateTime(LocalDateTime.now());
+            fileMapper.updateById(folder);
+            folderListingCache.invalidate(userId, folder.getParentId());
             
-            // 查询所有子文件和子文件夹
-            LambdaQueryWrapper<FileInfo> queryWrapper = new LambdaQueryWrapper<>();
-            queryWrapper.eq(FileInfo::getParentId, folderId)
-                       .eq(FileInfo::getUserId, userId)
-                       .eq(FileInfo::getDeleted, false);
-            List<FileInfo> childFiles = fileMapper.selectList(queryWrapper);
-            
-            // 递归更新所有子文件和子文件夹
-            for (FileInfo childFile : childFiles) {
-                if (childFile.getIsDir()) {
-                    // 递归处理子文件夹
-                    updateFolderPublicStatus(childFile.getId(), userId, isPublic);
-                } else {
-                    // 更新子文件的公开状态
-                    updateFilePublicStatus(childFile.getId(), userId, isPublic);
-                }
+            // 更新ES索引中文件夹自身及子树的继承公开状态
+            try {
+                User user = userMapper.selectById(userId);
+                String username = user != null ? user.getUsername() : "unknown";
+                folder.setInheritedPublic(isInheritedPublic(folder));
+                publicFeedCache.update(folder, username);
+                fileSearchService.indexFile(FileDocumentConverter.toFileDocument(folder, username));
+                syncInheritedPublic(folder);
+            } catch (Exception e) {
+                log.error("更新ES索引失败: {}", folder.getFilename(), e);
             }
             
-            log.info("文件夹及其子文件公开状态更新成功: {}, 用户ID: {}, 公开状态: {}", folderId, userId, isPublic);
+            log.info("文件夹公开状态更新成功: {}, 用户ID: {}, 公开状态: {}", folderId, userId, isPublic);
             return true;
         } catch (Exception e) {
             log.error("更新文件夹公开状态失败: {}", e.getMessage(), e);
@@ -606,9 +1289,20 @@ public class FileServiceImpl implements FileService {
 
     @Override
     public String initChunkUpload(String filename, Long fileSize, String fileType, Long userId, Long parentId, boolean isPublic) {
+        // 生成唯一的上传ID
+        String uploadId = UUID.randomUUID().toString();
+        
+        // 声明的文件大小决定预占空间及分块累计大小的上限
+        if (fileSize == null || fileSize < 0) {
+            throw new IllegalArgumentException("文件大小无效");
+        }
+        
+        // 为本次上传预占空间，上传完成或过期后释放
+        if (!storageUsageService.reserve(userId, uploadId, fileSize)) {
+            throw new QuotaExceededException("存储空间不足");
+        }
+        
         try {
-            // 生成唯一的上传ID
-            String uploadId = UUID.randomUUID().toString();
             
             // 存储上传信息到Redis
             Map<String, Object> uploadInfo = new HashMap<>();
@@ -630,6 +1324,7 @@ public class FileServiceImpl implements FileService {
             return uploadId;
         } catch (Exception e) {
             log.error("初始化分块上传失败: {}", e.getMessage(), e);
+            storageUsageService.release(userId, uploadId);
             throw new RuntimeException("初始化分块上传失败", e);
         }
     }
@@ -641,6 +1336,8 @@ public class FileServiceImpl implements FileService {
             Map<String, Object> uploadInfo = (Map<String, Object>) redisTemplate.opsForValue().get(UPLOAD_INFO_PREFIX + uploadId);
             if (uploadInfo == null) {
                 log.warn("上传ID不存在或已过期: {}", uploadId);
+                // 上传已过期，释放可能残留的预占
+                storageUsageService.release(userId, uploadId);
                 return false;
             }
             
@@ -651,6 +1348,17 @@ public class FileServiceImpl implements FileService {
                 return false;
             }
             
+            // 已接收的分块累计大小不能超过声明的文件大小，预占空间和用量都按声明大小计算
+            Long declaredSize = Long.valueOf(uploadInfo.get("fileSize").toString());
+            Long accepted = stringRedisTemplate.execute(CHUNK_SIZE_SCRIPT,
+                    Collections.singletonList(UPLOAD_SIZES_PREFIX + uploadId),
+                    String.valueOf(chunkIndex), String.valueOf(chunk.getSize()),
+                    String.valueOf(declaredSize), String.valueOf(UPLOAD_EXPIRATION));
+            if (accepted == null || accepted != 1) {
+                log.warn("分块累计大小超过声明的文件大小: {}, 分块索引: {}, 声明大小: {}", uploadId, chunkIndex, declaredSize);
+                return false;
+            }
+            
             // 获取原始文件名用于构建分块文件夹名
             String filename = (String) uploadInfo.get("filename");
             // 构建分块对象名: 用户ID/源文件名-chunks/chunkIndex
@@ -746,6 +1454,7 @@ public class FileServiceImpl implements FileService {
             Map<String, Object> uploadInfo = (Map<String, Object>) redisTemplate.opsForValue().get(UPLOAD_INFO_PREFIX + uploadId);
             if (uploadInfo == null) {
                 log.warn("上传ID不存在或已过期: {}", uploadId);
+                storageUsageService.release(userId, uploadId);
                 throw new RuntimeException("上传ID不存在或已过期");
             }
             
@@ -782,6 +1491,9 @@ public class FileServiceImpl implements FileService {
             // 清理分块和上传信息
             cleanupChunks(uploadId, totalChunks, userId, filename);
             
+            // 用量已在保存文件记录时计入，释放预占
+            storageUsageService.release(userId, uploadId);
+            
             log.info("文件上传完成: {}, 文件ID: {}, 用户ID: {}", uploadId, fileInfo.getId(), userId);
             return fileInfo;
         } catch (Exception e) {
@@ -790,6 +1502,41 @@ public class FileServiceImpl implements FileService {
         }
     }
     
+    @Override
+    public boolean cancelChunkUpload(String uploadId, Long userId) {
+        try {
+            Map<String, Object> uploadInfo = (Map<String, Object>) redisTemplate.opsForValue().get(UPLOAD_INFO_PREFIX + uploadId);
+            if (uploadInfo == null) {
+                // 上传信息已过期，预占只记录在当前用户名下，直接释放
+                log.warn("上传ID不存在或已过期: {}", uploadId);
+                storageUsageService.release(userId, uploadId);
+                return true;
+            }
+            
+            // 验证用户权限
+            Long fileUserId = Long.valueOf(uploadInfo.get("userId").toString());
+            if (!fileUserId.equals(userId)) {
+                log.warn("无权限取消上传: {}, 用户ID: {}", uploadId, userId);
+                return false;
+            }
+            
+            // 先删除上传信息，之后的分块上传和完成请求都会失败
+            List<Integer> uploadedChunks = getUploadedChunks(uploadId, userId);
+            redisTemplate.delete(UPLOAD_INFO_PREFIX + uploadId);
+            
+            // 按已上传的最大分块索引异步清理分块
+            int chunkCount = uploadedChunks.isEmpty() ? 0 : Collections.max(uploadedChunks) + 1;
+            cleanupChunks(uploadId, chunkCount, userId, (String) uploadInfo.get("filename"));
+            
+            storageUsageService.release(userId, uploadId);
+            log.info("取消分块上传: {}, 用户ID: {}", uploadId, userId);
+            return true;
+        } catch (Exception e) {
+            log.error("取消分块上传失败: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+    
     /**
      * 使用MinIO Compose Objects进行服务端合并（最优方案）
      */
@@ -811,6 +1558,20 @@ public class FileServiceImpl implements FileService {
             
             log.info("准备合并 {} 个分块到最终文件: {}", sources.size(), finalObjectName);
             
+            // 合并会覆盖同名文件，合并前先确认分块实际大小之和不超过声明大小（即预占空间）
+            long declaredSize = Long.parseLong(uploadInfo.get("fileSize").toString());
+            long chunksSize = 0;
+            for (int i = 0; i < totalChunks; i++) {
+                chunksSize += minioClient.statObject(
+                        StatObjectArgs.builder()
+                                .bucket(userFilesBucket)
+                                .object(userId + "/" + filename + "-chunks/" + i)
+                                .build()).size();
+            }
+            if (chunksSize > declaredSize) {
+                throw new IllegalArgumentException("分块总大小超过声明的文件大小: " + chunksSize + " > " + declaredSize);
+            }
+            
             // 使用MinIO的composeObject进行服务端合并
             minioClient.composeObject(
                     ComposeObjectArgs.builder()
@@ -820,7 +1581,23 @@ public class FileServiceImpl implements FileService {
                             .build()
             );
             
-            log.info("MinIO服务端合并完成: {}, 最终文件: {}", uploadId, finalObjectName);
+            // 按合并后对象的实际大小记录用量，合并期间分块被替换导致超出预占时删除对象
+            long actualSize = minioClient.statObject(
+                    StatObjectArgs.builder()
+                            .bucket(userFilesBucket)
+                            .object(finalObjectName)
+                            .build()).size();
+            if (actualSize > declaredSize) {
+                minioClient.removeObject(
+                        RemoveObjectArgs.builder()
+                                .bucket(userFilesBucket)
+                                .object(finalObjectName)
+                                .build());
+                throw new IllegalArgumentException("合并后的文件大小超过声明的文件大小: " + actualSize + " > " + declaredSize);
+            }
+            uploadInfo.put("fileSize", actualSize);
+            
+            log.info("MinIO服务端合并完成: {}, 最终文件: {}, 大小: {}字节", uploadId, finalObjectName, actualSize);
             
             // 保存文件信息到数据库
             return saveFileInfo(uploadInfo, userId);
@@ -1078,6 +1855,7 @@ public class FileServiceImpl implements FileService {
         if (existingFile != null) {
             // MinIO的composeObject已经自动覆盖了同名文件，无需手动删除
             // 只需要更新数据库记录
+            long previousSize = existingFile.getFileSize() != null ? existingFile.getFileSize() : 0;
             existingFile.setFileSize(fileSize);
             existingFile.setFileType(fileType);
             existingFile.setVisibility(visibility);
@@ -1085,11 +1863,19 @@ public class FileServiceImpl implements FileService {
             existingFile.setDeleted(false); // 确保文件未被标记为删除
             
             fileMapper.updateById(existingFile);
+            folderListingCache.invalidate(userId, parentId);
+            storageUsageService.recordChange(userId, fileSize - previousSize, 0);
+            adjustAncestorAggregates(existingFile, fileSize - previousSize, 0, 0);
+            
+            // 文件内容已覆盖，重新生成缩略图
+            thumbnailService.generateAsync(existingFile, userId + "/" + filename);
             
             // 更新ES索引
             try {
                 User user = userMapper.selectById(userId);
                 String username = user != null ? user.getUsername() : "unknown";
+                existingFile.setInheritedPublic(isInheritedPublic(existingFile));
+                publicFeedCache.update(existingFile, username);
                 fileSearchService.indexFile(FileDocumentConverter.toFileDocument(existingFile, username));
             } catch (Exception e) {
                 log.error("更新ES索引失败: {}", existingFile.getFilename(), e);
@@ -1113,11 +1899,20 @@ public class FileServiceImpl implements FileService {
             fileInfo.setUpdateTime(LocalDateTime.now());
             
             fileMapper.insert(fileInfo);
+            assignPath(fileInfo);
+            folderListingCache.invalidate(userId, parentId);
+            adjustAncestorAggregates(fileInfo, fileSize, 1, 1);
+            storageUsageService.recordChange(userId, fileSize, 1);
+            
+            // 图片文件后台生成缩略图
+            thumbnailService.generateAsync(fileInfo, userId + "/" + filename);
             
             // 同步到ES索引
             try {
                 User user = userMapper.selectById(userId);
                 String username = user != null ? user.getUsername() : "unknown";
+                fileInfo.setInheritedPublic(isInheritedPublic(fileInfo));
+                publicFeedCache.update(fileInfo, username);
                 fileSearchService.indexFile(FileDocumentConverter.toFileDocument(fileInfo, username));
             } catch (Exception e) {
                 log.error("同步文件到ES索引失败: {}", fileInfo.getFilename(), e);
@@ -1212,6 +2007,7 @@ public class FileServiceImpl implements FileService {
             try {
                 redisTemplate.delete(UPLOAD_INFO_PREFIX + uploadId);
                 redisTemplate.delete(UPLOAD_CHUNKS_PREFIX + uploadId);
+                redisTemplate.delete(UPLOAD_SIZES_PREFIX + uploadId);
                 log.debug("清理Redis缓存完成: {}", uploadId);
             } catch (Exception e) {
                 log.warn("清理Redis缓存失败: {}", uploadId, e);
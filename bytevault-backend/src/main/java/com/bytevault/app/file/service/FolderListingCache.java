@@ -0,0 +1,154 @@
+package com.bytevault.app.file.service;
+
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.bytevault.app.model.FileInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * 目录列表缓存
+ * 每个目录有一个版本戳，列表页按 (用户, 目录, 版本戳, 页码, 每页大小) 缓存在Redis中。
+ * 目录下的文件发生增删改时删除版本戳，下次读取生成新的版本戳，旧版本的缓存页不再被命中并自然过期。
+ * 读取时先取版本戳再查库，查询期间发生的修改会使结果写入旧版本下，不会读到过期数据。
+ */
+@Slf4j
+@Component
+public class FolderListingCache {
+
+    // Redis键前缀
+    private static final String VERSION_KEY_PREFIX = "folder_version:";
+    private static final String LISTING_KEY_PREFIX = "folder_listing:";
+
+    // 列表页缓存时间（10分钟）
+    private static final long LISTING_EXPIRATION = 10 * 60;
+    // 版本戳保留时间（1天），需长于列表页缓存时间
+    private static final long VERSION_EXPIRATION = 24 * 60 * 60;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final ObjectMapper objectMapper;
+
+    public FolderListingCache(RedisTemplate<String, Object> redisTemplate, ObjectMapper objectMapper) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 获取目录列表页，缓存未命中时通过 loader 查询并写入缓存
+     * Redis不可用时直接查询，不影响列表功能
+     * @param userId 用户ID
+     * @param parentId 目录ID
+     * @param page 页码
+     * @param size 每页大小
+     * @param loader 查询数据库的回调
+     * @return 列表页（不含下载URL）
+     */
+    public IPage<FileInfo> getOrLoad(Long userId, Long parentId, int page, int size, Supplier<IPage<FileInfo>> loader) {
+        String listingKey;
+        try {
+            listingKey = LISTING_KEY_PREFIX + userId + ":" + parentId + ":" + getVersion(userId, parentId) + ":" + page + ":" + size;
+            Object cached = redisTemplate.opsForValue().get(listingKey);
+            if (cached != null) {
+                CachedListing listing = objectMapper.readValue(cached.toString(), CachedListing.class);
+                Page<FileInfo> result = new Page<>(page, size, listing.getTotal());
+                result.setRecords(listing.getRecords());
+                return result;
+            }
+        } catch (Exception e) {
+            log.warn("读取目录列表缓存失败: 用户ID={}, 目录ID={}, {}", userId, parentId, e.getMessage());
+            return loader.get();
+        }
+
+        IPage<FileInfo> result = loader.get();
+        try {
+            String json = objectMapper.writeValueAsString(new CachedListing(result.getRecords(), result.getTotal()));
+            redisTemplate.opsForValue().set(listingKey, json, LISTING_EXPIRATION, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("写入目录列表缓存失败: 用户ID={}, 目录ID={}, {}", userId, parentId, e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * 使目录的列表缓存失效，在事务中调用时推迟到事务提交后执行，避免读取者以新版本缓存未提交前的数据
+     * @param userId 用户ID
+     * @param parentId 目录ID
+     */
+    public void invalidate(Long userId, Long parentId) {
+        invalidate(userId, List.of(parentId == null ? 0L : parentId));
+    }
+
+    /**
+     * 批量使多个目录的列表缓存失效（一次DEL）
+     * @param userId 用户ID
+     * @param parentIds 目录ID列表
+     */
+    public void invalidate(Long userId, Collection<Long> parentIds) {
+        List<String> keys = parentIds.stream()
+                .map(parentId -> VERSION_KEY_PREFIX + userId + ":" + parentId)
+                .collect(Collectors.toList());
+        if (keys.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    deleteVersions(keys);
+                }
+            });
+        } else {
+            deleteVersions(keys);
+        }
+    }
+
+    private void deleteVersions(List<String> keys) {
+        try {
+            redisTemplate.delete(keys);
+        } catch (Exception e) {
+            log.error("删除目录列表版本戳失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 获取目录当前的版本戳，不存在时生成新的随机版本戳
+     * 版本戳不要求递增，只要求与之前用过的不同，因此失效操作只需删除键
+     */
+    private String getVersion(Long userId, Long parentId) {
+        String versionKey = VERSION_KEY_PREFIX + userId + ":" + parentId;
+        Object version = redisTemplate.opsForValue().get(versionKey);
+        if (version != null) {
+            return version.toString();
+        }
+        String newVersion = UUID.randomUUID().toString().replace("-", "");
+        Boolean created = redisTemplate.opsForValue().setIfAbsent(versionKey, newVersion, VERSION_EXPIRATION, TimeUnit.SECONDS);
+        if (Boolean.TRUE.equals(created)) {
+            return newVersion;
+        }
+        // 并发读取者已生成版本戳
+        version = redisTemplate.opsForValue().get(versionKey);
+        return version != null ? version.toString() : newVersion;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CachedListing {
+        private List<FileInfo> records;
+        private long total;
+    }
+}
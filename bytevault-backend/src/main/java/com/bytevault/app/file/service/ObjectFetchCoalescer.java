@@ -0,0 +1,109 @@
+package com.bytevault.app.file.service;
+
+import io.minio.GetObjectArgs;
+import io.minio.GetObjectResponse;
+import io.minio.MinioClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * MinIO对象读取合并器（single-flight）
+ * 同一对象的并发读取只会触发一次MinIO GET，其余请求等待并共享同一份字节数据。
+ * 合并读取会把对象完整读入内存，调用方应通过 isCoalescable 判断大小，超过上限的对象直接流式读取。
+ * 等待方最多等待 coalesceWaitMillis，发起读取的请求无论成功、异常还是错误都会结束共享的结果。
+ */
+@Slf4j
+@Component
+public class ObjectFetchCoalescer {
+
+    private final MinioClient minioClient;
+
+    /**
+     * 正在进行中的读取，key为 bucket/objectName
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+
+    @Value("${minio.coalesceMaxBytes:16777216}")
+    private long maxBytes;
+
+    /**
+     * 等待其他请求读取结果的最长时间（毫秒）
+     */
+    @Value("${minio.coalesceWaitMillis:30000}")
+    private long waitMillis;
+
+    public ObjectFetchCoalescer(MinioClient minioClient) {
+        this.minioClient = minioClient;
+    }
+
+    /**
+     * 判断指定大小的对象是否可以走合并读取
+     * @param size 对象大小，未知时传null
+     * @return 是否可以合并
+     */
+    public boolean isCoalescable(Long size) {
+        return size != null && size >= 0 && size <= maxBytes;
+    }
+
+    /**
+     * 读取对象全部内容，同一对象的并发调用共享一次MinIO读取
+     * @param bucket 桶名
+     * @param objectName 对象名
+     * @return 对象内容
+     */
+    public byte[] fetch(String bucket, String objectName) throws Exception {
+        String key = bucket + "/" + objectName;
+        CompletableFuture<byte[]> own = new CompletableFuture<>();
+        CompletableFuture<byte[]> existing = inFlight.putIfAbsent(key, own);
+
+        if (existing != null) {
+            // 已有相同对象的读取在进行中，等待其结果
+            log.debug("合并读取MinIO对象: {}", key);
+            try {
+                return existing.get(waitMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                log.warn("等待合并读取超时: {}", key);
+                throw e;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+
+        try {
+            byte[] bytes = readObject(bucket, objectName);
+            own.complete(bytes);
+            return bytes;
+        } catch (Throwable e) {
+            // 包括Error在内的任何失败都要结束共享结果，否则等待方会一直阻塞
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            // 读取结束后立即移除，后续请求重新读取，不做额外缓存
+            inFlight.remove(key, own);
+        }
+    }
+
+    private byte[] readObject(String bucket, String objectName) throws Exception {
+        try (GetObjectResponse response = minioClient.getObject(
+                GetObjectArgs.builder()
+                        .bucket(bucket)
+                        .object(objectName)
+                        .build())) {
+            return response.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.bytevault.app.file.service;
+
+import io.minio.GetPresignedObjectUrlArgs;
+import io.minio.MinioClient;
+import io.minio.http.Method;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 预签名下载URL缓存
+ * 同一对象在URL有效期内复用已签名的URL，避免每次列表都重新计算HMAC签名。
+ * 缓存条目在URL过期前提前失效，保证返回给客户端的URL至少还有 MIN_REMAINING_MILLIS 的有效期。
+ */
+@Slf4j
+@Component
+public class PresignedUrlCache {
+
+    // URL有效期（1小时）
+    private static final int URL_EXPIRY_SECONDS = 60 * 60;
+    // 返回的URL至少还需剩余的有效期（15分钟）
+    private static final long MIN_REMAINING_MILLIS = 15 * 60 * 1000;
+    // 缓存条目上限，超过后先清理过期条目，仍超过则整体清空
+    private static final int MAX_ENTRIES = 100_000;
+
+    private final MinioClient minioClient;
+    private final ConcurrentHashMap<String, CachedUrl> cache = new ConcurrentHashMap<>();
+
+    public PresignedUrlCache(MinioClient minioClient) {
+        this.minioClient = minioClient;
+    }
+
+    /**
+     * 获取对象的预签名GET URL，命中缓存时不重新签名
+     * @param bucket 桶名
+     * @param objectName 对象名
+     * @return 预签名URL
+     */
+    public String getDownloadUrl(String bucket, String objectName) throws Exception {
+        String key = bucket + "/" + objectName;
+        long now = System.currentTimeMillis();
+
+        CachedUrl cached = cache.get(key);
+        if (cached != null && cached.reusableUntil > now) {
+            return cached.url;
+        }
+
+        String url = minioClient.getPresignedObjectUrl(
+                GetPresignedObjectUrlArgs.builder()
+                        .method(Method.GET)
+                        .bucket(bucket)
+                        .object(objectName)
+                        .expiry(URL_EXPIRY_SECONDS, TimeUnit.SECONDS)
+                        .build());
+
+        if (cache.size() >= MAX_ENTRIES) {
+            evictExpired();
+            if (cache.size() >= MAX_ENTRIES) {
+                cache.clear();
+            }
+        }
+        cache.put(key, new CachedUrl(url, now + URL_EXPIRY_SECONDS * 1000L - MIN_REMAINING_MILLIS));
+        return url;
+    }
+
+    /**
+     * 使对象的缓存URL失效（对象删除或覆盖时调用）
+     * @param bucket 桶名
+     * @param objectName 对象名
+     */
+    public void evict(String bucket, String objectName) {
+        cache.remove(bucket + "/" + objectName);
+    }
+
+    /**
+     * 定时清理已不可复用的缓存条目
+     * 每5分钟执行一次
+     */
+    @Scheduled(fixedRate = 5 * 60 * 1000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        int before = cache.size();
+        cache.entrySet().removeIf(entry -> entry.getValue().reusableUntil <= now);
+        log.debug("清理预签名URL缓存: {} -> {}", before, cache.size());
+    }
+
+    private static class CachedUrl {
+        private final String url;
+        private final long reusableUntil;
+
+        CachedUrl(String url, long reusableUntil) {
+            this.url = url;
+            this.reusableUntil = reusableUntil;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.bytevault.app.file.service;
+
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.bytevault.app.mapper.FileMapper;
+import com.bytevault.app.model.FileInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 公开广场热点页快照
+ * 按更新时间倒序保存最新的 HOT_SIZE 条公开文件：有序集合 public_feed:ids 保存顺序（分值为更新时间毫秒数），
+ * 哈希 public_feed:items 保存文件信息JSON。文件公开、取消公开、更新或删除时增量维护快照，
+ * 快照超过 REVALIDATE_MILLIS 未重建时在后台从数据库重建一次，读取者继续使用旧快照。
+ * 请求范围超出快照或快照不完整时返回null，由调用方回退到数据库查询。
+ */
+@Slf4j
+@Component
+public class PublicFeedCache {
+
+    // Redis键
+    private static final String IDS_KEY = "public_feed:ids";
+    private static final String ITEMS_KEY = "public_feed:items";
+    private static final String BUILT_AT_KEY = "public_feed:built_at";
+    private static final String REBUILD_LOCK_KEY = "public_feed:rebuild_lock";
+    private static final String COUNT_KEY = "public_files:count";
+
+    // 快照保存的文件数（默认每页10条时为前50页）
+    private static final int HOT_SIZE = 500;
+    // 快照重新校验间隔（1分钟）
+    private static final long REVALIDATE_MILLIS = 60 * 1000;
+    // 重建锁的有效期（秒），防止多实例同时重建
+    private static final long REBUILD_LOCK_EXPIRATION = 30;
+    // 公开文件总数的缓存时间（秒）
+    private static final long COUNT_EXPIRATION = 60;
+    // 单次批量移除的最大数量
+    private static final int REMOVE_BATCH_SIZE = 1000;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final FileMapper fileMapper;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 后台重建线程，同一时刻只有一个重建任务
+     */
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "public-feed-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PublicFeedCache(RedisTemplate<String, Object> redisTemplate, FileMapper fileMapper, ObjectMapper objectMapper) {
+        this.redisTemplate = redisTemplate;
+        this.fileMapper = fileMapper;
+        this.objectMapper = objectMapper;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    /**
+     * 从快照读取公开广场的一页
+     * @param page 页码
+     * @param size 每页大小
+     * @return 分页结果（不含下载URL），快照无法满足时返回null
+     */
+    public IPage<FileInfo> getPage(int page, int size) {
+        if (page < 1 || size < 1) {
+            return null;
+        }
+        long start = (long) (page - 1) * size;
+        long end = start + size - 1;
+        if (end >= HOT_SIZE) {
+            return null;
+        }
+
+        try {
+            Object builtAt = redisTemplate.opsForValue().get(BUILT_AT_KEY);
+            if (builtAt == null) {
+                // 快照尚未建立，本次回退到数据库，后台建立快照
+                rebuildAsync();
+                return null;
+            }
+            if (System.currentTimeMillis() - Long.parseLong(builtAt.toString()) > REVALIDATE_MILLIS) {
+                rebuildAsync();
+            }
+
+            Set<Object> ids = redisTemplate.opsForZSet().reverseRange(IDS_KEY, start, end);
+            List<FileInfo> records = new ArrayList<>();
+            if (ids != null && !ids.isEmpty()) {
+                List<Object> fields = new ArrayList<>(ids);
+                List<Object> items = redisTemplate.opsForHash().multiGet(ITEMS_KEY, fields);
+                for (Object item : items) {
+                    if (item == null) {
+                        // 快照正在重建，本次回退到数据库
+                        return null;
+                    }
+                    records.add(objectMapper.readValue(item.toString(), FileInfo.class));
+                }
+            }
+
+            long total = getTotal();
+            // 快照中的条目因取消公开或删除而减少时，末尾可能缺少数据，等待下次重建补齐
+            if (records.size() < size && start + records.size() < total) {
+                return null;
+            }
+
+            Page<FileInfo> result = new Page<>(page, size, total);
+            result.setRecords(records);
+            return result;
+        } catch (Exception e) {
+            log.warn("读取公开广场快照失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 文件新增或修改后增量更新快照：公开文件写入快照，非公开文件从快照移除
+     * @param fileInfo 文件信息
+     * @param ownerName 所有者用户名
+     */
+    public void update(FileInfo fileInfo, String ownerName) {
+        if (!"public".equals(fileInfo.getVisibility())) {
+            remove(Collections.singletonList(fileInfo.getId()));
+            return;
+        }
+
+        String json;
+        try {
+            FileInfo item = new FileInfo();
+            item.setId(fileInfo.getId());
+            item.setUserId(fileInfo.getUserId());
+            item.setFilename(fileInfo.getFilename());
+            item.setParentId(fileInfo.getParentId());
+            item.setFileSize(fileInfo.getFileSize());
+            item.setFileType(fileInfo.getFileType());
+            item.setIsDir(fileInfo.getIsDir());
+            item.setVisibility(fileInfo.getVisibility());
+            item.setPath(fileInfo.getPath());
+            item.setTotalSize(fileInfo.getTotalSize());
+            item.setFileCount(fileInfo.getFileCount());
+            item.setChildCount(fileInfo.getChildCount());
+            item.setDeleted(false);
+            item.setCreateTime(fileInfo.getCreateTime());
+            item.setUpdateTime(fileInfo.getUpdateTime());
+            item.setOwnerName(ownerName);
+            json = objectMapper.writeValueAsString(item);
+        } catch (Exception e) {
+            log.error("序列化公开文件失败: {}", fileInfo.getId(), e);
+            return;
+        }
+        String id = String.valueOf(fileInfo.getId());
+        double score = toScore(fileInfo.getUpdateTime());
+
+        runAfterCommit(() -> {
+            try {
+                if (redisTemplate.opsForValue().get(BUILT_AT_KEY) == null) {
+                    // 快照不存在时不做增量维护，由下次读取触发重建
+                    return;
+                }
+                redisTemplate.opsForHash().put(ITEMS_KEY, id, json);
+                redisTemplate.opsForZSet().add(IDS_KEY, id, score);
+                redisTemplate.delete(COUNT_KEY);
+                trim();
+            } catch (Exception e) {
+                log.error("更新公开广场快照失败: {}", id, e);
+            }
+        });
+    }
+
+    /**
+     * 从快照中移除文件（删除或取消公开时调用）
+     * @param fileIds 文件ID列表
+     */
+    public void remove(Collection<Long> fileIds) {
+        if (fileIds.isEmpty()) {
+            return;
+        }
+        List<Object> ids = new ArrayList<>(fileIds.size());
+        for (Long fileId : fileIds) {
+            ids.add(String.valueOf(fileId));
+        }
+
+        runAfterCommit(() -> {
+            try {
+                long removed = 0;
+                for (int i = 0; i < ids.size(); i += REMOVE_BATCH_SIZE) {
+                    Object[] batch = ids.subList(i, Math.min(i + REMOVE_BATCH_SIZE, ids.size())).toArray();
+                    Long count = redisTemplate.opsForZSet().remove(IDS_KEY, batch);
+                    redisTemplate.opsForHash().delete(ITEMS_KEY, batch);
+                    removed += count != null ? count : 0;
+                }
+                if (removed > 0) {
+                    redisTemplate.delete(COUNT_KEY);
+                }
+            } catch (Exception e) {
+                log.error("从公开广场快照移除文件失败: {}", e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * 获取公开文件总数，结果短期缓存，快照变更时失效
+     */
+    public long getTotal() {
+        Object cached = redisTemplate.opsForValue().get(COUNT_KEY);
+        if (cached instanceof Number) {
+            return ((Number) cached).longValue();
+        }
+        long count = fileMapper.countPublicFiles();
+        redisTemplate.opsForValue().set(COUNT_KEY, count, COUNT_EXPIRATION, TimeUnit.SECONDS);
+        return count;
+    }
+
+    /**
+     * 在后台从数据库重建快照，多实例之间通过Redis锁保证同一时刻只有一个重建
+     */
+    private void rebuildAsync() {
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(REBUILD_LOCK_KEY, "1", REBUILD_LOCK_EXPIRATION, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        rebuildExecutor.execute(() -> {
+            try {
+                rebuild();
+            } catch (Exception e) {
+                log.error("重建公开广场快照失败: {}", e.getMessage(), e);
+            } finally {
+                redisTemplate.delete(REBUILD_LOCK_KEY);
+            }
+        });
+    }
+
+    private void rebuild() throws Exception {
+        List<FileInfo> files = fileMapper.selectPublicFilesByCursor(null, null, HOT_SIZE);
+
+        // 先写入临时键，再整体替换，读取者不会看到写了一半的快照
+        String tmpIdsKey = IDS_KEY + ":tmp";
+        String tmpItemsKey = ITEMS_KEY + ":tmp";
+        redisTemplate.delete(Arrays.asList(tmpIdsKey, tmpItemsKey));
+
+        if (files.isEmpty()) {
+            redisTemplate.delete(Arrays.asList(IDS_KEY, ITEMS_KEY));
+        } else {
+            Map<String, Object> items = new HashMap<>();
+            for (FileInfo file : files) {
+                String id = String.valueOf(file.getId());
+                items.put(id, objectMapper.writeValueAsString(file));
+                redisTemplate.opsForZSet().add(tmpIdsKey, id, toScore(file.getUpdateTime()));
+            }
+            redisTemplate.opsForHash().putAll(tmpItemsKey, items);
+            redisTemplate.rename(tmpItemsKey, ITEMS_KEY);
+            redisTemplate.rename(tmpIdsKey, IDS_KEY);
+        }
+        redisTemplate.delete(COUNT_KEY);
+        redisTemplate.opsForValue().set(BUILT_AT_KEY, String.valueOf(System.currentTimeMillis()));
+        log.info("公开广场快照重建完成: {} 条", files.size());
+    }
+
+    /**
+     * 裁剪快照，只保留最新的 HOT_SIZE 条
+     */
+    private void trim() {
+        Set<Object> stale = redisTemplate.opsForZSet().range(IDS_KEY, 0, -(HOT_SIZE + 1));
+        if (stale != null && !stale.isEmpty()) {
+            Object[] ids = stale.toArray();
+            redisTemplate.opsForZSet().remove(IDS_KEY, ids);
+            redisTemplate.opsForHash().delete(ITEMS_KEY, ids);
+        }
+    }
+
+    private double toScore(LocalDateTime updateTime) {
+        LocalDateTime time = updateTime != null ? updateTime : LocalDateTime.now();
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 在事务中调用时推迟到提交后执行，避免快照中出现回滚的数据
+     */
+    private void runAfterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
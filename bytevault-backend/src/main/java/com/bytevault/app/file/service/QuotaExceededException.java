@@ -0,0 +1,11 @@
+package com.bytevault.app.file.service;
+
+/**
+ * 上传所需空间超出用户配额时抛出，控制器返回507
+ */
+public class QuotaExceededException extends RuntimeException {
+
+    public QuotaExceededException(String message) {
+        super(message);
+    }
+}
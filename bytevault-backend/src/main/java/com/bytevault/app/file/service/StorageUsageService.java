@@ -0,0 +1,48 @@
+package com.bytevault.app.file.service;
+
+import com.bytevault.app.model.StorageUsage;
+
+/**
+ * 用户存储用量及配额服务
+ */
+public interface StorageUsageService {
+
+    /**
+     * 获取用户的存储用量（已用空间、文件数、配额及预占空间）
+     * @param userId 用户ID
+     * @return 存储用量
+     */
+    StorageUsage getUsage(Long userId);
+
+    /**
+     * 记录用户存储用量的变化（上传、覆盖、删除时调用）
+     * 数据库在当前事务中更新，Redis缓存在事务提交后更新
+     * @param userId 用户ID
+     * @param deltaBytes 空间变化量（字节）
+     * @param deltaCount 文件数变化量
+     */
+    void recordChange(Long userId, long deltaBytes, long deltaCount);
+
+    /**
+     * 为进行中的上传预占空间，已用空间加上所有预占不超过配额时才成功（原子操作）
+     * @param userId 用户ID
+     * @param reservationId 预占ID（如分块上传ID）
+     * @param bytes 预占大小（字节）
+     * @return 是否预占成功
+     */
+    boolean reserve(Long userId, String reservationId, long bytes);
+
+    /**
+     * 释放预占的空间，在事务中调用时推迟到事务结束后执行
+     * @param userId 用户ID
+     * @param reservationId 预占ID
+     */
+    void release(Long userId, String reservationId);
+
+    /**
+     * 设置用户配额
+     * @param userId 用户ID
+     * @param quotaBytes 配额（字节），为空时恢复默认配额
+     */
+    void updateQuota(Long userId, Long quotaBytes);
+}
@@ -0,0 +1,225 @@
+package com.bytevault.app.file.service;
+
+import com.bytevault.app.mapper.StorageUsageMapper;
+import com.bytevault.app.model.StorageUsage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户存储用量及配额服务实现
+ * 用量以 user_storage_usage 表为准，随上传、覆盖、删除在同一事务中增量更新；
+ * Redis哈希 storage_usage:{userId} 缓存用量和配额，storage_reserved:{userId} 记录进行中上传的预占空间，
+ * 预占检查和写入在一个Lua脚本中完成，并发上传不会同时通过配额检查。
+ */
+@Slf4j
+@Service
+public class StorageUsageServiceImpl implements StorageUsageService {
+
+    // Redis键前缀
+    private static final String USAGE_KEY_PREFIX = "storage_usage:";
+    private static final String RESERVED_KEY_PREFIX = "storage_reserved:";
+
+    // 用量缓存时间（10分钟），缓存与数据库出现偏差时最多持续这么久
+    private static final long USAGE_EXPIRATION = 10 * 60;
+    // 预占有效期（24小时，与分块上传信息的有效期一致）
+    private static final long RESERVATION_EXPIRATION = 24 * 60 * 60;
+
+    /**
+     * 预占空间：清理过期预占，已用 + 预占 + 本次 不超过配额时写入本次预占
+     * 返回 1 成功，0 超出配额，-1 用量缓存不存在
+     */
+    private static final RedisScript<Long> RESERVE_SCRIPT = new DefaultRedisScript<>(
+            "local used = redis.call('HGET', KEYS[1], 'bytes') " +
+            "local quota = redis.call('HGET', KEYS[1], 'quota') " +
+            "if not used or not quota then return -1 end " +
+            "local now = tonumber(ARGV[3]) " +
+            "local reserved = 0 " +
+            "local entries = redis.call('HGETALL', KEYS[2]) " +
+            "for i = 1, #entries, 2 do " +
+            "  local sep = string.find(entries[i + 1], ':') " +
+            "  local amount = tonumber(string.sub(entries[i + 1], 1, sep - 1)) " +
+            "  local expireAt = tonumber(string.sub(entries[i + 1], sep + 1)) " +
+            "  if expireAt <= now then redis.call('HDEL', KEYS[2], entries[i]) " +
+            "  elseif entries[i] ~= ARGV[1] then reserved = reserved + amount end " +
+            "end " +
+            "if tonumber(used) + reserved + tonumber(ARGV[2]) > tonumber(quota) then return 0 end " +
+            "redis.call('HSET', KEYS[2], ARGV[1], ARGV[2] .. ':' .. ARGV[4]) " +
+            "redis.call('EXPIRE', KEYS[2], ARGV[5]) " +
+            "return 1",
+            Long.class);
+
+    /**
+     * 缓存存在时才增量更新，避免在缓存缺失时创建只有增量的不完整记录
+     */
+    private static final RedisScript<Long> INCREMENT_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end " +
+            "redis.call('HINCRBY', KEYS[1], 'bytes', ARGV[1]) " +
+            "redis.call('HINCRBY', KEYS[1], 'count', ARGV[2]) " +
+            "return 1",
+            Long.class);
+
+    private final StorageUsageMapper storageUsageMapper;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Value("${minio.defaultQuotaBytes}")
+    private long defaultQuotaBytes;
+
+    public StorageUsageServiceImpl(StorageUsageMapper storageUsageMapper, StringRedisTemplate stringRedisTemplate) {
+        this.storageUsageMapper = storageUsageMapper;
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @Override
+    public StorageUsage getUsage(Long userId) {
+        Map<Object, Object> cached = stringRedisTemplate.opsForHash().entries(USAGE_KEY_PREFIX + userId);
+        StorageUsage usage;
+        if (cached.containsKey("bytes") && cached.containsKey("count") && cached.containsKey("quota")) {
+            usage = StorageUsage.builder()
+                    .userId(userId)
+                    .usedBytes(Long.valueOf(cached.get("bytes").toString()))
+                    .fileCount(Long.valueOf(cached.get("count").toString()))
+                    .quotaBytes(Long.valueOf(cached.get("quota").toString()))
+                    .build();
+        } else {
+            usage = loadUsage(userId);
+        }
+        usage.setReservedBytes(sumReserved(userId));
+        return usage;
+    }
+
+    @Override
+    public void recordChange(Long userId, long deltaBytes, long deltaCount) {
+        if (deltaBytes == 0 && deltaCount == 0) {
+            return;
+        }
+        storageUsageMapper.addUsage(userId, deltaBytes, deltaCount);
+        runAfterCommit(() -> {
+            try {
+                stringRedisTemplate.execute(INCREMENT_SCRIPT, Collections.singletonList(USAGE_KEY_PREFIX + userId),
+                        String.valueOf(deltaBytes), String.valueOf(deltaCount));
+            } catch (Exception e) {
+                // 缓存更新失败时删除缓存，下次读取从数据库重新加载
+                log.error("更新存储用量缓存失败: 用户ID={}", userId, e);
+                stringRedisTemplate.delete(USAGE_KEY_PREFIX + userId);
+            }
+        });
+    }
+
+    @Override
+    public boolean reserve(Long userId, String reservationId, long bytes) {
+        List<String> keys = Arrays.asList(USAGE_KEY_PREFIX + userId, RESERVED_KEY_PREFIX + userId);
+        long now = System.currentTimeMillis();
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Long result = stringRedisTemplate.execute(RESERVE_SCRIPT, keys,
+                    reservationId,
+                    String.valueOf(bytes),
+                    String.valueOf(now),
+                    String.valueOf(now + RESERVATION_EXPIRATION * 1000),
+                    String.valueOf(RESERVATION_EXPIRATION));
+            if (result != null && result >= 0) {
+                if (result == 0) {
+                    log.warn("存储空间不足: 用户ID={}, 申请={}字节", userId, bytes);
+                }
+                return result == 1;
+            }
+            // 用量缓存不存在，从数据库加载后重试
+            loadUsage(userId);
+        }
+        return false;
+    }
+
+    @Override
+    public void release(Long userId, String reservationId) {
+        Runnable action = () -> {
+            try {
+                stringRedisTemplate.opsForHash().delete(RESERVED_KEY_PREFIX + userId, reservationId);
+            } catch (Exception e) {
+                log.error("释放预占空间失败: 用户ID={}, 预占ID={}", userId, reservationId, e);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 事务提交或回滚后都要释放，提交时用量已计入数据库和缓存
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    @Override
+    public void updateQuota(Long userId, Long quotaBytes) {
+        storageUsageMapper.updateQuota(userId, quotaBytes);
+        stringRedisTemplate.delete(USAGE_KEY_PREFIX + userId);
+        log.info("更新用户配额: 用户ID={}, 配额={}", userId, quotaBytes);
+    }
+
+    /**
+     * 从数据库加载用量并写入缓存
+     */
+    private StorageUsage loadUsage(Long userId) {
+        StorageUsage usage = storageUsageMapper.selectById(userId);
+        if (usage == null) {
+            usage = StorageUsage.builder().userId(userId).usedBytes(0L).fileCount(0L).build();
+        }
+        if (usage.getQuotaBytes() == null) {
+            usage.setQuotaBytes(defaultQuotaBytes);
+        }
+
+        Map<String, String> values = new HashMap<>();
+        values.put("bytes", String.valueOf(usage.getUsedBytes()));
+        values.put("count", String.valueOf(usage.getFileCount()));
+        values.put("quota", String.valueOf(usage.getQuotaBytes()));
+        String key = USAGE_KEY_PREFIX + userId;
+        stringRedisTemplate.opsForHash().putAll(key, values);
+        stringRedisTemplate.expire(key, USAGE_EXPIRATION, TimeUnit.SECONDS);
+        return usage;
+    }
+
+    /**
+     * 统计未过期的预占空间
+     */
+    private long sumReserved(Long userId) {
+        long now = System.currentTimeMillis();
+        long reserved = 0;
+        for (Object value : stringRedisTemplate.opsForHash().values(RESERVED_KEY_PREFIX + userId)) {
+            String[] parts = value.toString().split(":");
+            if (parts.length == 2 && Long.parseLong(parts[1]) > now) {
+                reserved += Long.parseLong(parts[0]);
+            }
+        }
+        return reserved;
+    }
+
+    /**
+     * 在事务中调用时推迟到提交后执行
+     */
+    private void runAfterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.bytevault.app.file.service;
+
+import com.bytevault.app.model.FileInfo;
+
+import java.util.List;
+
+/**
+ * 图片缩略图服务接口
+ */
+public interface ThumbnailService {
+
+    /**
+     * 判断文件是否可以生成缩略图
+     * @param fileInfo 文件信息
+     * @return 是否支持
+     */
+    boolean supports(FileInfo fileInfo);
+
+    /**
+     * 将请求的尺寸对齐到支持的缩略图尺寸
+     * @param size 请求的尺寸（最长边像素）
+     * @return 支持的尺寸
+     */
+    int normalizeSize(int size);
+
+    /**
+     * 异步生成文件的全部尺寸缩略图（上传完成后调用，不阻塞上传请求）
+     * @param fileInfo 文件信息
+     * @param sourceObjectName 原图在MinIO中的对象名
+     */
+    void generateAsync(FileInfo fileInfo, String sourceObjectName);
+
+    /**
+     * 获取缩略图，缓存不存在时同步生成
+     * @param fileInfo 文件信息
+     * @param size 缩略图尺寸
+     * @return JPEG字节，文件无法生成缩略图时返回null
+     */
+    byte[] getThumbnail(FileInfo fileInfo, int size) throws Exception;
+
+    /**
+     * 获取文件全部缩略图的对象名（用于批量删除）
+     * @param fileId 文件ID
+     * @return 对象名列表
+     */
+    List<String> getThumbnailObjectNames(Long fileId);
+}
@@ -0,0 +1,270 @@
+package com.bytevault.app.file.service;
+
+import com.bytevault.app.file.util.ImageUtils;
+import com.bytevault.app.model.FileInfo;
+import io.minio.GetObjectArgs;
+import io.minio.GetObjectResponse;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.errors.ErrorResponseException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 缩略图服务实现
+ * 缩略图统一编码为JPEG，存放在用户文件桶的 _thumbs/{fileId}/{size}.jpg 下，
+ * 上传图片后由后台线程池生成；请求时缓存不存在则同步生成，同一文件的并发生成只执行一次。
+ */
+@Slf4j
+@Service
+public class ThumbnailServiceImpl implements ThumbnailService {
+
+    // 支持的缩略图尺寸（最长边像素），按从大到小生成
+    private static final int[] SIZES = {512, 256, 128};
+    private static final String THUMB_PREFIX = "_thumbs/";
+    private static final float JPEG_QUALITY = 0.8f;
+    // 超过该大小的原图不生成缩略图（50MB）
+    private static final long MAX_SOURCE_BYTES = 50L * 1024 * 1024;
+    // 无法解码的文件ID记录上限
+    private static final int MAX_UNSUPPORTED_ENTRIES = 10_000;
+    // 请求线程上同时进行的同步生成数，超出时交给后台线程池
+    private static final int MAX_SYNC_GENERATIONS = 2;
+    // 等待其他请求生成结果的最长时间（秒）
+    private static final long GENERATE_WAIT_SECONDS = 30;
+
+    private final MinioClient minioClient;
+    private final ObjectFetchCoalescer objectFetchCoalescer;
+
+    @Value("${minio.userFilesBucketName}")
+    private String userFilesBucket;
+
+    /**
+     * 后台生成线程池，队列满时丢弃任务，由首次请求时同步生成兜底
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * 正在进行中的生成任务，key为文件ID
+     */
+    private final ConcurrentHashMap<Long, CompletableFuture<Map<Integer, byte[]>>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 已确认无法解码的文件ID，避免每次请求都重新读取原图
+     */
+    private final Set<Long> unsupported = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 同步生成许可，解码大图占用大量内存和CPU，不能让大量请求线程同时解码
+     */
+    private final Semaphore syncGenerations = new Semaphore(MAX_SYNC_GENERATIONS);
+
+    public ThumbnailServiceImpl(MinioClient minioClient, ObjectFetchCoalescer objectFetchCoalescer) {
+        this.minioClient = minioClient;
+        this.objectFetchCoalescer = objectFetchCoalescer;
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(200),
+                r -> {
+                    Thread thread = new Thread(r, "thumbnail-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (r, e) -> log.warn("缩略图生成队列已满，丢弃任务"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public boolean supports(FileInfo fileInfo) {
+        return fileInfo != null
+                && !Boolean.TRUE.equals(fileInfo.getIsDir())
+                && ImageUtils.isImage(fileInfo.getFileType())
+                && fileInfo.getFileSize() != null
+                && fileInfo.getFileSize() <= MAX_SOURCE_BYTES
+                && !unsupported.contains(fileInfo.getId());
+    }
+
+    @Override
+    public int normalizeSize(int size) {
+        // 取不小于请求尺寸的最小规格，超过最大规格时返回最大规格
+        int result = SIZES[0];
+        for (int candidate : SIZES) {
+            if (candidate >= size) {
+                result = candidate;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void generateAsync(FileInfo fileInfo, String sourceObjectName) {
+        // 文件可能被同名覆盖，重新判断是否可解码
+        unsupported.remove(fileInfo.getId());
+        if (!supports(fileInfo)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                generate(fileInfo, sourceObjectName);
+            } catch (Exception e) {
+                log.error("生成缩略图失败: {}", fileInfo.getId(), e);
+            }
+        });
+    }
+
+    @Override
+    public byte[] getThumbnail(FileInfo fileInfo, int size) throws Exception {
+        if (!supports(fileInfo)) {
+            return null;
+        }
+        int normalized = normalizeSize(size);
+
+        try {
+            return objectFetchCoalescer.fetch(userFilesBucket, thumbObjectName(fileInfo.getId(), normalized));
+        } catch (ErrorResponseException e) {
+            if (!"NoSuchKey".equals(e.errorResponse().code())) {
+                throw e;
+            }
+        }
+
+        // 缩略图尚未生成（后台任务未完成或被丢弃），同步生成
+        String sourceObjectName = fileInfo.getUserId() + "/" + fileInfo.getFilename();
+        if (!syncGenerations.tryAcquire()) {
+            // 同步生成已满：有进行中的生成时等待其结果，否则交给后台线程池，本次返回null由前端显示默认图标
+            CompletableFuture<Map<Integer, byte[]>> existing = inFlight.get(fileInfo.getId());
+            if (existing != null) {
+                return await(existing).get(normalized);
+            }
+            log.debug("同步生成缩略图繁忙，转为后台生成: {}", fileInfo.getId());
+            executor.execute(() -> {
+                try {
+                    generate(fileInfo, sourceObjectName);
+                } catch (Exception e) {
+                    log.error("生成缩略图失败: {}", fileInfo.getId(), e);
+                }
+            });
+            return null;
+        }
+        try {
+            log.debug("缩略图不存在，同步生成: {}", fileInfo.getId());
+            return generate(fileInfo, sourceObjectName).get(normalized);
+        } finally {
+            syncGenerations.release();
+        }
+    }
+
+    @Override
+    public List<String> getThumbnailObjectNames(Long fileId) {
+        List<String> objectNames = new ArrayList<>(SIZES.length);
+        for (int size : SIZES) {
+            objectNames.add(thumbObjectName(fileId, size));
+        }
+        return objectNames;
+    }
+
+    /**
+     * 生成并保存全部尺寸的缩略图，同一文件的并发调用共享一次生成
+     */
+    private Map<Integer, byte[]> generate(FileInfo fileInfo, String sourceObjectName) throws Exception {
+        Long fileId = fileInfo.getId();
+        CompletableFuture<Map<Integer, byte[]>> own = new CompletableFuture<>();
+        CompletableFuture<Map<Integer, byte[]>> existing = inFlight.putIfAbsent(fileId, own);
+
+        if (existing != null) {
+            return await(existing);
+        }
+
+        try {
+            Map<Integer, byte[]> thumbnails = doGenerate(fileId, fileInfo.getFileSize(), sourceObjectName);
+            own.complete(thumbnails);
+            return thumbnails;
+        } catch (Throwable e) {
+            // 包括解码大图时的OutOfMemoryError在内，任何失败都要结束共享结果，否则等待方会一直阻塞
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(fileId, own);
+        }
+    }
+
+    /**
+     * 限时等待进行中的生成结果，Error等非Exception的失败原因包装在ExecutionException中抛出
+     */
+    private Map<Integer, byte[]> await(CompletableFuture<Map<Integer, byte[]>> future) throws Exception {
+        try {
+            return future.get(GENERATE_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private Map<Integer, byte[]> doGenerate(Long fileId, Long fileSize, String sourceObjectName) throws Exception {
+        // 超过合并读取上限的原图直接读取，同一文件的并发生成已由 inFlight 合并
+        byte[] source = objectFetchCoalescer.isCoalescable(fileSize)
+                ? objectFetchCoalescer.fetch(userFilesBucket, sourceObjectName)
+                : readObject(sourceObjectName);
+        BufferedImage image = ImageUtils.read(source);
+        if (image == null) {
+            // 格式不支持或尺寸过大，记录后不再重复读取原图
+            log.info("图片无法解码或尺寸过大，不生成缩略图: {}", fileId);
+            if (unsupported.size() >= MAX_UNSUPPORTED_ENTRIES) {
+                unsupported.clear();
+            }
+            unsupported.add(fileId);
+            return Collections.emptyMap();
+        }
+
+        Map<Integer, byte[]> thumbnails = new TreeMap<>();
+        BufferedImage current = image;
+        for (int size : SIZES) {
+            // 从上一级缩略图继续缩小，只解码一次原图
+            current = ImageUtils.scaleToFit(current, size);
+            byte[] jpeg = ImageUtils.toJpeg(current, JPEG_QUALITY);
+            minioClient.putObject(
+                    PutObjectArgs.builder()
+                            .bucket(userFilesBucket)
+                            .object(thumbObjectName(fileId, size))
+                            .stream(new ByteArrayInputStream(jpeg), jpeg.length, -1)
+                            .contentType("image/jpeg")
+                            .build());
+            thumbnails.put(size, jpeg);
+        }
+        log.info("缩略图生成成功: 文件ID={}, 原图={}", fileId, sourceObjectName);
+        return thumbnails;
+    }
+
+    private byte[] readObject(String objectName) throws Exception {
+        try (GetObjectResponse response = minioClient.getObject(
+                GetObjectArgs.builder()
+                        .bucket(userFilesBucket)
+                        .object(objectName)
+                        .build())) {
+            return response.readAllBytes();
+        }
+    }
+
+    private String thumbObjectName(Long fileId, int size) {
+        return THUMB_PREFIX + fileId + "/" + size + ".jpg";
+    }
+}
@@ -0,0 +1,56 @@
+package com.bytevault.app.file.util;
+
+import com.bytevault.app.model.FileInfo;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * 文件列表的游标，记录上一页最后一条记录的排序键 (is_dir, update_time, id)
+ * 序列化为URL安全的Base64字符串，对客户端不透明
+ */
+@Getter
+public class FileCursor {
+
+    private final Boolean isDir;
+    private final LocalDateTime updateTime;
+    private final Long id;
+
+    private FileCursor(Boolean isDir, LocalDateTime updateTime, Long id) {
+        this.isDir = isDir;
+        this.updateTime = updateTime;
+        this.id = id;
+    }
+
+    /**
+     * 根据页面最后一条记录生成游标
+     */
+    public static String encode(FileInfo last) {
+        String raw = (Boolean.TRUE.equals(last.getIsDir()) ? "1" : "0") + "|" + last.getUpdateTime() + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标
+     * @param cursor 游标字符串，为空时表示第一页
+     * @return 游标，第一页时返回null
+     * @throws IllegalArgumentException 游标格式错误
+     */
+    public static FileCursor decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("无效的游标: " + cursor);
+            }
+            return new FileCursor("1".equals(parts[0]), LocalDateTime.parse(parts[1]), Long.valueOf(parts[2]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("无效的游标: " + cursor, e);
+        }
+    }
+}
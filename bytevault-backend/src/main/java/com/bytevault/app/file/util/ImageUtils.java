@@ -0,0 +1,237 @@
+package com.bytevault.app.file.util;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * 图片处理工具类（基于JDK ImageIO，支持JPEG/PNG/GIF/BMP等格式的解码）
+ */
+public class ImageUtils {
+
+    // 允许解码的最大像素数，防止超大图片（解压炸弹）耗尽内存
+    private static final long MAX_PIXELS = 50_000_000L;
+
+    private ImageUtils() {
+    }
+
+    /**
+     * 判断内容类型是否为图片
+     */
+    public static boolean isImage(String contentType) {
+        return contentType != null && contentType.startsWith("image/");
+    }
+
+    /**
+     * 解码图片并按EXIF方向信息摆正
+     * @param data 图片字节
+     * @return 解码后的图片，格式不支持或尺寸超过上限时返回null
+     */
+    public static BufferedImage read(byte[] data) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                // 超大图片与无法解码的格式同样处理，调用方保留原图或不生成缩略图
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > MAX_PIXELS) {
+                    return null;
+                }
+                BufferedImage image = reader.read(0);
+                return applyOrientation(image, readExifOrientation(data));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 等比缩放图片，使最长边不超过 maxEdge，原图更小时不放大
+     */
+    public static BufferedImage scaleToFit(BufferedImage source, int maxEdge) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        double ratio = Math.min(1.0, (double) maxEdge / Math.max(width, height));
+        return scale(source, Math.max(1, (int) Math.round(width * ratio)), Math.max(1, (int) Math.round(height * ratio)));
+    }
+
+    /**
+     * 等比缩放图片，使宽度不超过 maxWidth，原图更小时不放大
+     */
+    public static BufferedImage scaleToWidth(BufferedImage source, int maxWidth) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        double ratio = Math.min(1.0, (double) maxWidth / width);
+        return scale(source, Math.max(1, (int) Math.round(width * ratio)), Math.max(1, (int) Math.round(height * ratio)));
+    }
+
+    /**
+     * 将图片编码为JPEG（透明区域填充白色）
+     * @param image 图片
+     * @param quality 压缩质量 0~1
+     * @return JPEG字节
+     */
+    public static byte[] toJpeg(BufferedImage image, float quality) throws IOException {
+        BufferedImage rgb = image;
+        if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+            rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = rgb.createGraphics();
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+            g.drawImage(image, 0, 0, null);
+            g.dispose();
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output)) {
+            writer.setOutput(imageOutput);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.write(null, new IIOImage(rgb, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * 缩放到指定尺寸，缩小超过一半时逐级减半，避免单次双线性插值产生锯齿
+     */
+    private static BufferedImage scale(BufferedImage source, int targetWidth, int targetHeight) {
+        if (targetWidth == source.getWidth() && targetHeight == source.getHeight()) {
+            return source;
+        }
+
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+
+            BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = next.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(current, 0, 0, width, height, null);
+            g.dispose();
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+
+        return current;
+    }
+
+    /**
+     * 根据EXIF方向旋转图片（仅处理旋转，忽略镜像方向）
+     */
+    private static BufferedImage applyOrientation(BufferedImage image, int orientation) {
+        int quadrants;
+        switch (orientation) {
+            case 3:
+                quadrants = 2;
+                break;
+            case 6:
+                quadrants = 1;
+                break;
+            case 8:
+                quadrants = 3;
+                break;
+            default:
+                return image;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean swap = quadrants % 2 == 1;
+        BufferedImage rotated = new BufferedImage(swap ? height : width, swap ? width : height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = rotated.createGraphics();
+        g.translate(rotated.getWidth() / 2.0, rotated.getHeight() / 2.0);
+        g.rotate(Math.PI / 2 * quadrants);
+        g.translate(-width / 2.0, -height / 2.0);
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return rotated;
+    }
+
+    /**
+     * 从JPEG的APP1(Exif)段读取方向标记，读取失败或不存在时返回1（正常方向）
+     */
+    private static int readExifOrientation(byte[] data) {
+        try {
+            if (data.length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != 0xD8) {
+                return 1;
+            }
+            int pos = 2;
+            while (pos + 4 <= data.length) {
+                if ((data[pos] & 0xFF) != 0xFF) {
+                    return 1;
+                }
+                int marker = data[pos + 1] & 0xFF;
+                int length = ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+                // SOS之后是图像数据，不再有元数据段
+                if (marker == 0xDA) {
+                    return 1;
+                }
+                if (marker == 0xE1 && pos + 10 <= data.length
+                        && data[pos + 4] == 'E' && data[pos + 5] == 'x' && data[pos + 6] == 'i' && data[pos + 7] == 'f') {
+                    return readTiffOrientation(data, pos + 10, Math.min(data.length, pos + 2 + length));
+                }
+                pos += 2 + length;
+            }
+        } catch (RuntimeException e) {
+            // EXIF损坏时按正常方向处理
+        }
+        return 1;
+    }
+
+    private static int readTiffOrientation(byte[] data, int tiffStart, int end) {
+        boolean littleEndian = data[tiffStart] == 'I';
+        int ifdOffset = readInt(data, tiffStart + 4, littleEndian);
+        int ifdStart = tiffStart + ifdOffset;
+        int entryCount = readShort(data, ifdStart, littleEndian);
+        for (int i = 0; i < entryCount; i++) {
+            int entry = ifdStart + 2 + i * 12;
+            if (entry + 12 > end) {
+                break;
+            }
+            if (readShort(data, entry, littleEndian) == 0x0112) {
+                return readShort(data, entry + 8, littleEndian);
+            }
+        }
+        return 1;
+    }
+
+    private static int readShort(byte[] data, int offset, boolean littleEndian) {
+        int b0 = data[offset] & 0xFF;
+        int b1 = data[offset + 1] & 0xFF;
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static int readInt(byte[] data, int offset, boolean littleEndian) {
+        int high = readShort(data, offset + (littleEndian ? 2 : 0), littleEndian);
+        int low = readShort(data, offset + (littleEndian ? 0 : 2), littleEndian);
+        return (high << 16) | low;
+    }
+}
@@ -3,8 +3,10 @@ package com.bytevault.app.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.bytevault.app.model.BackgroundImage;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 
+import java.util.Collection;
 import java.util.List;
 
 @Mapper
@@ -25,4 +27,15 @@ public interface BackgroundImageMapper extends BaseMapper<BackgroundImage> {
      */
     @Select("SELECT * FROM user_background_images WHERE id = #{id} AND is_deleted = 0")
     BackgroundImage getBackgroundImageById(Long id);
-} 
\ No newline at end of file
+    
+    /**
+     * 批量获取背景图片
+     * @param ids 背景图片ID列表
+     * @return 背景图片列表（不含已删除的）
+     */
+    @Select("<script>" +
+            "SELECT * FROM user_background_images WHERE is_deleted = 0 AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    List<BackgroundImage> getBackgroundImagesByIds(@Param("ids") Collection<Long> ids);
+}
@@ -7,7 +7,10 @@ import com.bytevault.app.model.FileInfo;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Mapper
@@ -28,26 +31,274 @@ public interface FileMapper extends BaseMapper<FileInfo> {
     
     /**
      * 查询公开文件列表
+     * 不传 parentId 时返回自身公开的文件（公开广场）；
+     * 传入 parentId 时返回该目录下的全部子节点，调用方需先确认该目录是公开的（自身公开或继承公开）
      * @param page 分页对象
+     * @param parentId 公开目录ID，可为空
      * @return 分页公开文件列表
      */
-    @Select("SELECT f.*, u.username as ownerName FROM user_files f " +
+    @Select("<script>" +
+            "SELECT f.*, u.username as ownerName FROM user_files f " +
             "LEFT JOIN user u ON f.user_id = u.id " +
-            "WHERE f.visibility = 'public' AND f.is_deleted = false " +
-            "ORDER BY f.update_time DESC")
-    IPage<FileInfo> selectPublicFiles(Page<FileInfo> page);
+            "WHERE f.is_deleted = false " +
+            "<choose>" +
+            "<when test='parentId != null'>AND f.parent_id = #{parentId} ORDER BY f.is_dir DESC, f.update_time DESC</when>" +
+            "<otherwise>AND f.visibility = 'public' ORDER BY f.update_time DESC</otherwise>" +
+            "</choose>" +
+            "</script>")
+    IPage<FileInfo> selectPublicFiles(Page<FileInfo> page, @Param("parentId") Long parentId);
+    
+    /**
+     * 查询最近更新的公开目录的物化路径（走 idx_public_feed 索引），数据库回退搜索时据此展开继承公开的子树
+     * @param limit 最多返回的目录数
+     * @return 公开目录列表（只包含ID、用户ID和路径）
+     */
+    @Select("SELECT id, user_id, path FROM user_files " +
+            "WHERE visibility = 'public' AND is_deleted = false AND is_dir = true " +
+            "ORDER BY update_time DESC LIMIT #{limit}")
+    List<FileInfo> selectPublicFolderPaths(@Param("limit") int limit);
     
     /**
-     * 搜索文件
+     * 搜索文件（ES不可用时的回退查询）
+     * 关键词前后模糊匹配无法使用索引，查询需要扫描候选行；继承公开的范围由调用方传入的有限个公开目录路径前缀给出，
+     * 超出上限的公开目录下的文件不会被搜到，完整的继承公开搜索由ES的 inherited_public 标记完成
      * @param page 分页对象
      * @param userId 当前用户ID
      * @param keyword 关键词
+     * @param publicFolders 公开目录（用户ID及路径，数量有上限），子树中的文件对所有人可见
      * @return 分页搜索结果
      */
-    @Select("SELECT f.*, u.username as ownerName FROM user_files f " +
+    @Select("<script>" +
+            "SELECT f.*, u.username as ownerName FROM user_files f " +
             "LEFT JOIN user u ON f.user_id = u.id " +
-            "WHERE (f.user_id = #{userId} OR f.visibility = 'public') AND f.is_deleted = false " +
+            "WHERE (f.user_id = #{userId} OR f.visibility = 'public' " +
+            "<foreach collection='publicFolders' item='folder'>" +
+            "OR (f.user_id = #{folder.userId} AND f.path LIKE CONCAT(#{folder.path}, '%')) " +
+            "</foreach>" +
+            ") AND f.is_deleted = false " +
             "AND (f.file_name LIKE CONCAT('%', #{keyword}, '%') OR u.username LIKE CONCAT('%', #{keyword}, '%')) " +
-            "ORDER BY f.update_time DESC")
-    IPage<FileInfo> searchFiles(Page<FileInfo> page, @Param("userId") Long userId, @Param("keyword") String keyword);
-} 
\ No newline at end of file
+            "ORDER BY f.update_time DESC" +
+            "</script>")
+    IPage<FileInfo> searchFiles(Page<FileInfo> page, @Param("userId") Long userId, @Param("keyword") String keyword,
+                                @Param("publicFolders") List<FileInfo> publicFolders);
+    
+    /**
+     * 游标分页查询目录下的文件列表（走 idx_user_folder 索引，无OFFSET和COUNT）
+     * 排序键为 (is_dir, update_time, id) 降序，游标为上一页最后一条记录的排序键
+     * @param userId 用户ID
+     * @param parentId 父目录ID
+     * @param isDir 游标：是否目录，第一页时为空
+     * @param updateTime 游标：更新时间
+     * @param id 游标：文件ID
+     * @param limit 查询条数
+     * @return 文件列表
+     */
+    @Select("<script>" +
+            "SELECT f.*, u.username as ownerName FROM user_files f " +
+            "LEFT JOIN user u ON f.user_id = u.id " +
+            "WHERE f.user_id = #{userId} AND f.parent_id = #{parentId} AND f.is_deleted = false " +
+            "<if test='id != null'>" +
+            "AND (f.is_dir &lt; #{isDir} OR (f.is_dir = #{isDir} AND (f.update_time &lt; #{updateTime} " +
+            "OR (f.update_time = #{updateTime} AND f.id &lt; #{id})))) " +
+            "</if>" +
+            "ORDER BY f.is_dir DESC, f.update_time DESC, f.id DESC LIMIT #{limit}" +
+            "</script>")
+    List<FileInfo> selectUserFilesByCursor(@Param("userId") Long userId, @Param("parentId") Long parentId,
+                                           @Param("isDir") Boolean isDir, @Param("updateTime") LocalDateTime updateTime,
+                                           @Param("id") Long id, @Param("limit") int limit);
+    
+    /**
+     * 游标分页查询公开广场（走 idx_public_feed 索引，无OFFSET和COUNT）
+     * 排序键为 (update_time, id) 降序
+     * @param updateTime 游标：更新时间，第一页时为空
+     * @param id 游标：文件ID
+     * @param limit 查询条数
+     * @return 公开文件列表
+     */
+    @Select("<script>" +
+            "SELECT f.*, u.username as ownerName FROM user_files f " +
+            "LEFT JOIN user u ON f.user_id = u.id " +
+            "WHERE f.visibility = 'public' AND f.is_deleted = false " +
+            "<if test='id != null'>" +
+            "AND (f.update_time &lt; #{updateTime} OR (f.update_time = #{updateTime} AND f.id &lt; #{id})) " +
+            "</if>" +
+            "ORDER BY f.update_time DESC, f.id DESC LIMIT #{limit}" +
+            "</script>")
+    List<FileInfo> selectPublicFilesByCursor(@Param("updateTime") LocalDateTime updateTime,
+                                             @Param("id") Long id, @Param("limit") int limit);
+    
+    /**
+     * 游标分页搜索文件，排序键为 (update_time, id) 降序
+     * @param userId 当前用户ID
+     * @param keyword 关键词
+     * @param publicFolders 公开目录（用户ID及路径，数量有上限），子树中的文件对所有人可见
+     * @param updateTime 游标：更新时间，第一页时为空
+     * @param id 游标：文件ID
+     * @param limit 查询条数
+     * @return 搜索结果
+     */
+    @Select("<script>" +
+            "SELECT f.*, u.username as ownerName FROM user_files f " +
+            "LEFT JOIN user u ON f.user_id = u.id " +
+            "WHERE (f.user_id = #{userId} OR f.visibility = 'public' " +
+            "<foreach collection='publicFolders' item='folder'>" +
+            "OR (f.user_id = #{folder.userId} AND f.path LIKE CONCAT(#{folder.path}, '%')) " +
+            "</foreach>" +
+            ") AND f.is_deleted = false " +
+            "AND (f.file_name LIKE CONCAT('%', #{keyword}, '%') OR u.username LIKE CONCAT('%', #{keyword}, '%')) " +
+            "<if test='id != null'>" +
+            "AND (f.update_time &lt; #{updateTime} OR (f.update_time = #{updateTime} AND f.id &lt; #{id})) " +
+            "</if>" +
+            "ORDER BY f.update_time DESC, f.id DESC LIMIT #{limit}" +
+            "</script>")
+    List<FileInfo> searchFilesByCursor(@Param("userId") Long userId, @Param("keyword") String keyword,
+                                       @Param("publicFolders") List<FileInfo> publicFolders,
+                                       @Param("updateTime") LocalDateTime updateTime,
+                                       @Param("id") Long id, @Param("limit") int limit);
+    
+    /**
+     * 统计目录下的文件数量（走 idx_user_folder 索引）
+     * @param userId 用户ID
+     * @param parentId 父目录ID
+     * @return 文件数量
+     */
+    @Select("SELECT COUNT(*) FROM user_files WHERE user_id = #{userId} AND parent_id = #{parentId} AND is_deleted = false")
+    long countUserFiles(@Param("userId") Long userId, @Param("parentId") Long parentId);
+    
+    /**
+     * 统计公开广场的文件数量（走 idx_public_feed 索引）
+     * @return 公开文件数量
+     */
+    @Select("SELECT COUNT(*) FROM user_files WHERE visibility = 'public' AND is_deleted = false")
+    long countPublicFiles();
+    
+    /**
+     * 查询目录及其所有子孙节点（按物化路径前缀，走 idx_user_path 索引）
+     * @param userId 用户ID
+     * @param path 根目录的物化路径
+     * @return 子树节点列表（包含根目录本身）
+     */
+    @Select("SELECT id, user_id, file_name, file_size, file_type, is_dir, path FROM user_files " +
+            "WHERE user_id = #{userId} AND path LIKE CONCAT(#{path}, '%') AND is_deleted = false")
+    List<FileInfo> selectSubtreeByPath(@Param("userId") Long userId, @Param("path") String path);
+    
+    /**
+     * 查询目录及其所有子孙节点（递归CTE，用于物化路径尚未回填的旧数据）
+     * @param userId 用户ID
+     * @param rootId 根目录ID
+     * @return 子树节点列表（包含根目录本身）
+     */
+    @Select("WITH RECURSIVE subtree AS (" +
+            "SELECT id, user_id, file_name, file_size, file_type, is_dir FROM user_files " +
+            "WHERE id = #{rootId} AND user_id = #{userId} AND is_deleted = false " +
+            "UNION ALL " +
+            "SELECT f.id, f.user_id, f.file_name, f.file_size, f.file_type, f.is_dir FROM user_files f " +
+            "INNER JOIN subtree s ON f.parent_id = s.id " +
+            "WHERE f.user_id = #{userId} AND f.is_deleted = false) " +
+            "SELECT * FROM subtree")
+    List<FileInfo> selectSubtree(@Param("userId") Long userId, @Param("rootId") Long rootId);
+    
+    /**
+     * 批量逻辑删除
+     * @param ids 文件ID列表
+     * @return 影响行数
+     */
+    @Update("<script>" +
+            "UPDATE user_files SET is_deleted = true, update_time = NOW() " +
+            "WHERE is_deleted = false AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    int softDeleteByIds(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * 锁定并查询仍未删除的节点（在事务中调用）
+     * 并发删除同一子树时，后到的事务等待先到的事务提交后只能读到剩余未删除的节点
+     * @param ids 文件ID列表
+     * @return 未删除的节点
+     */
+    @Select("<script>" +
+            "SELECT id, user_id, file_name, parent_id, file_size, file_type, is_dir, path FROM user_files " +
+            "WHERE is_deleted = false AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            " FOR UPDATE" +
+            "</script>")
+    List<FileInfo> selectLiveByIdsForUpdate(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * 查询节点的物化路径
+     * @param id 文件ID
+     * @return 物化路径
+     */
+    @Select("SELECT path FROM user_files WHERE id = #{id}")
+    String selectPathById(@Param("id") Long id);
+    
+    /**
+     * 更新节点的物化路径
+     * @param id 文件ID
+     * @param path 物化路径
+     * @return 影响行数
+     */
+    @Update("UPDATE user_files SET path = #{path} WHERE id = #{id}")
+    int updatePath(@Param("id") Long id, @Param("path") String path);
+    
+    /**
+     * 移动子树：将路径前缀 oldPath 替换为 newPath（包含子树根节点本身）
+     * @param userId 用户ID
+     * @param oldPath 原物化路径
+     * @param newPath 新物化路径
+     * @return 影响行数
+     */
+    @Update("UPDATE user_files SET path = CONCAT(#{newPath}, SUBSTRING(path, CHAR_LENGTH(#{oldPath}) + 1)) " +
+            "WHERE user_id = #{userId} AND path LIKE CONCAT(#{oldPath}, '%')")
+    int replacePathPrefix(@Param("userId") Long userId, @Param("oldPath") String oldPath, @Param("newPath") String newPath);
+    
+    /**
+     * 统计给定目录中公开且未删除的数量（用于判断祖先目录是否公开）
+     * @param ids 目录ID列表
+     * @return 公开目录数量
+     */
+    @Select("<script>" +
+            "SELECT COUNT(*) FROM user_files " +
+            "WHERE is_dir = true AND visibility = 'public' AND is_deleted = false AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    int countPublicFolders(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * 查询子树中自身公开的目录（不含子树根目录），按深度从浅到深排序
+     * @param userId 用户ID
+     * @param path 子树根目录的物化路径
+     * @return 公开目录列表
+     */
+    @Select("SELECT id, path FROM user_files " +
+            "WHERE user_id = #{userId} AND path LIKE CONCAT(#{path}, '_%') " +
+            "AND is_dir = true AND visibility = 'public' AND is_deleted = false " +
+            "ORDER BY CHAR_LENGTH(path)")
+    List<FileInfo> selectPublicFoldersInSubtree(@Param("userId") Long userId, @Param("path") String path);
+    
+    /**
+     * 增量调整目录的聚合大小和文件数（显式保留 update_time，聚合变化不影响列表排序）
+     * @param ids 目录ID列表（通常为某个节点的全部祖先）
+     * @param deltaSize 大小变化量（字节）
+     * @param deltaFiles 文件数变化量
+     * @return 影响行数
+     */
+    @Update("<script>" +
+            "UPDATE user_files SET total_size = GREATEST(total_size + #{deltaSize}, 0), " +
+            "file_count = GREATEST(file_count + #{deltaFiles}, 0), update_time = update_time " +
+            "WHERE is_dir = true AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    int adjustFolderAggregates(@Param("ids") Collection<Long> ids, @Param("deltaSize") long deltaSize,
+                               @Param("deltaFiles") int deltaFiles);
+    
+    /**
+     * 增量调整目录的直接子项数（显式保留 update_time）
+     * @param id 目录ID
+     * @param delta 变化量
+     * @return 影响行数
+     */
+    @Update("UPDATE user_files SET child_count = GREATEST(child_count + #{delta}, 0), update_time = update_time " +
+            "WHERE id = #{id} AND is_dir = true")
+    int adjustChildCount(@Param("id") Long id, @Param("delta") int delta);
+}
@@ -2,10 +2,12 @@ package com.bytevault.app.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.bytevault.app.model.Role;
+import com.bytevault.app.model.UserRolePermission;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 
+import java.util.Collection;
 import java.util.List;
 
 @Mapper
@@ -18,4 +20,32 @@ public interface RoleMapper extends BaseMapper<Role> {
             "JOIN user_role ur ON r.id = ur.role_id " +
             "WHERE ur.user_id = #{userId}")
     List<Role> selectRolesByUserId(@Param("userId") Long userId);
-} 
\ No newline at end of file
+    
+    /**
+     * 查询用户的角色ID列表
+     */
+    @Select("SELECT role_id FROM user_role WHERE user_id = #{userId} AND deleted = 0")
+    List<Long> selectRoleIdsByUserId(@Param("userId") Long userId);
+    
+    /**
+     * 批量查询多个用户的角色ID（每行为一个用户-角色组合，权限字段为空）
+     */
+    @Select("<script>" +
+            "SELECT user_id, role_id FROM user_role WHERE deleted = 0 AND user_id IN " +
+            "<foreach collection='userIds' item='userId' open='(' separator=',' close=')'>#{userId}</foreach> " +
+            "ORDER BY user_id, role_id" +
+            "</script>")
+    List<UserRolePermission> selectRoleIdsByUserIds(@Param("userIds") Collection<Long> userIds);
+    
+    /**
+     * 查询全部未删除的角色及其权限（一次查询，每行为一个角色-权限组合，用户字段为空）
+     */
+    @Select("SELECT r.id AS role_id, r.name AS role_name, r.description AS role_description, " +
+            "p.id AS permission_id, p.name AS permission_name, p.description AS permission_description " +
+            "FROM role r " +
+            "LEFT JOIN role_permission rp ON rp.role_id = r.id AND rp.deleted = 0 " +
+            "LEFT JOIN permission p ON p.id = rp.permission_id AND p.deleted = 0 " +
+            "WHERE r.deleted = 0 " +
+            "ORDER BY r.id, p.id")
+    List<UserRolePermission> selectRolePermissionGraph();
+}
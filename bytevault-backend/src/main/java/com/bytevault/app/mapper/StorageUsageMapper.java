@@ -0,0 +1,35 @@
+package com.bytevault.app.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.bytevault.app.model.StorageUsage;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+@Mapper
+public interface StorageUsageMapper extends BaseMapper<StorageUsage> {
+    
+    /**
+     * 增量更新用户的存储用量，记录不存在时创建
+     * @param userId 用户ID
+     * @param deltaBytes 空间变化量（字节）
+     * @param deltaCount 文件数变化量
+     * @return 影响行数
+     */
+    @Insert("INSERT INTO user_storage_usage (user_id, used_bytes, file_count) " +
+            "VALUES (#{userId}, GREATEST(#{deltaBytes}, 0), GREATEST(#{deltaCount}, 0)) " +
+            "ON DUPLICATE KEY UPDATE used_bytes = GREATEST(used_bytes + #{deltaBytes}, 0), " +
+            "file_count = GREATEST(file_count + #{deltaCount}, 0)")
+    int addUsage(@Param("userId") Long userId, @Param("deltaBytes") long deltaBytes, @Param("deltaCount") long deltaCount);
+    
+    /**
+     * 设置用户配额，记录不存在时创建
+     * @param userId 用户ID
+     * @param quotaBytes 配额（字节），为空时恢复默认配额
+     * @return 影响行数
+     */
+    @Insert("INSERT INTO user_storage_usage (user_id, used_bytes, file_count, quota_bytes) " +
+            "VALUES (#{userId}, 0, 0, #{quotaBytes}) " +
+            "ON DUPLICATE KEY UPDATE quota_bytes = #{quotaBytes}")
+    int updateQuota(@Param("userId") Long userId, @Param("quotaBytes") Long quotaBytes);
+}
@@ -0,0 +1,27 @@
+package com.bytevault.app.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 游标分页结果
+ * 客户端将 nextCursor 原样传回以获取下一页，hasMore 为false时表示已到末尾。
+ * total 只在请求时返回，且可能是缓存的估计值。
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+    private List<T> records;
+    // 下一页游标，没有更多数据时为null
+    private String nextCursor;
+    private Boolean hasMore;
+    private Integer size;
+    // 总数（估计值），未请求时为null
+    private Long total;
+}
@@ -0,0 +1,42 @@
+package com.bytevault.app.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 分段下载清单
+ * 客户端可并行对 url（或 proxyUrl）发起 Range 请求下载各分段，
+ * 并携带 If-Match: etag 保证所有分段来自同一版本的文件，最后按 fileSize 校验拼接结果。
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DownloadManifest {
+    private Long fileId;
+    private String filename;
+    private String contentType;
+    private Long fileSize;
+    private String etag;
+    // MinIO预签名URL（支持Range和If-Match），过期后重新获取清单
+    private String url;
+    // 后端代理下载地址（支持Range和If-Match）
+    private String proxyUrl;
+    private Long segmentSize;
+    private List<Segment> segments;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Segment {
+        private Integer index;
+        private Long offset;
+        private Long length;
+        // HTTP Range头的值，如 bytes=0-67108863
+        private String range;
+    }
+}
@@ -1,5 +1,6 @@
 package com.bytevault.app.model;
 
+import com.baomidou.mybatisplus.annotation.FieldStrategy;
 import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
@@ -45,6 +46,24 @@ public class FileInfo {
     @Builder.Default
     private String visibility = "private";
     
+    // 物化路径: /祖先ID/.../自身ID/
+    @TableField("path")
+    private String path;
+    
+    // 目录聚合信息（文件行恒为0）：子树内所有文件的总大小、文件数，以及直接子项数
+    // 只通过 FileMapper 的增量更新维护，updateById 不写回，避免覆盖并发的增量
+    @TableField(value = "total_size", updateStrategy = FieldStrategy.NEVER)
+    @Builder.Default
+    private Long totalSize = 0L;
+    
+    @TableField(value = "file_count", updateStrategy = FieldStrategy.NEVER)
+    @Builder.Default
+    private Integer fileCount = 0;
+    
+    @TableField(value = "child_count", updateStrategy = FieldStrategy.NEVER)
+    @Builder.Default
+    private Integer childCount = 0;
+    
     @TableField("is_deleted")
     @TableLogic(value = "false", delval = "true")
     @Builder.Default
@@ -62,4 +81,8 @@ public class FileInfo {
     
     @TableField(exist = false)
     private String downloadUrl;
+    
+    // 是否从公开的祖先目录继承了公开状态
+    @TableField(exist = false)
+    private Boolean inheritedPublic;
 } 
\ No newline at end of file
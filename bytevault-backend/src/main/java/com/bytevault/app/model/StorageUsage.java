@@ -0,0 +1,41 @@
+package com.bytevault.app.model;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import java.time.LocalDateTime;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@TableName("user_storage_usage")
+public class StorageUsage {
+
+    @TableId(value = "user_id", type = IdType.INPUT)
+    private Long userId;
+    
+    // 已用空间（字节），只统计未删除的文件
+    @TableField("used_bytes")
+    private Long usedBytes;
+    
+    @TableField("file_count")
+    private Long fileCount;
+    
+    // 用户配额（字节），为空时使用默认配额
+    @TableField("quota_bytes")
+    private Long quotaBytes;
+    
+    @TableField("update_time")
+    private LocalDateTime updateTime;
+    
+    // 非数据库字段：进行中的分块上传预占的空间
+    @TableField(exist = false)
+    private Long reservedBytes;
+}
@@ -0,0 +1,31 @@
+package com.bytevault.app.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 用户-角色-权限关联行，用于一次查询批量加载角色关系
+ * 查询用户-角色关系时权限字段为空，查询角色-权限关系时用户字段为空，角色没有权限时权限字段为空
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserRolePermission {
+
+    private Long userId;
+
+    private Long roleId;
+
+    private String roleName;
+
+    private String roleDescription;
+
+    private Long permissionId;
+
+    private String permissionName;
+
+    private String permissionDescription;
+}
@@ -3,6 +3,7 @@ package com.bytevault.app.search.controller;
 import com.bytevault.app.search.document.FileDocument;
 import com.bytevault.app.search.service.FileSearchService;
 import com.bytevault.app.auth.config.JwtUtils;
+import com.bytevault.app.auth.model.VerifiedToken;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.http.ResponseEntity;
@@ -89,6 +90,11 @@ public class FileSearchController {
      * 从请求中获取当前用户ID
      */
     private Long getCurrentUserId(HttpServletRequest request) {
+        // 认证过滤器已验证的令牌直接复用，不再重复解析
+        Object verified = request.getAttribute(VerifiedToken.REQUEST_ATTRIBUTE);
+        if (verified instanceof VerifiedToken) {
+            return ((VerifiedToken) verified).getUserId();
+        }
         String token = request.getHeader("Authorization");
         if (token != null && token.startsWith("Bearer ")) {
             token = token.substring(7);
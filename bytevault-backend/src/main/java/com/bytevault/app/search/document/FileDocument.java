@@ -58,6 +58,14 @@ public class FileDocument {
     @Field(type = FieldType.Keyword, name = "visibility")
     private String visibility;
     
+    // 物化路径，用于按目录前缀批量更新
+    @Field(type = FieldType.Keyword, name = "path")
+    private String path;
+    
+    // 是否从公开的祖先目录继承了公开状态
+    @Field(type = FieldType.Boolean, name = "inherited_public")
+    private Boolean inheritedPublic;
+    
     @Field(type = FieldType.Boolean, name = "is_deleted")
     private Boolean isDeleted;
     
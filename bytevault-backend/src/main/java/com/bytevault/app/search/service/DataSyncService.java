@@ -12,6 +12,7 @@ import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -45,12 +46,15 @@ public class DataSyncService {
             Map<Long, String> userIdToNameMap = allUsers.stream()
                     .collect(Collectors.toMap(User::getId, User::getUsername));
             
+            Set<Long> publicFolderIds = collectPublicFolderIds(allFiles);
+            
             int successCount = 0;
             int failCount = 0;
             
             for (FileInfo fileInfo : allFiles) {
                 try {
                     String username = userIdToNameMap.getOrDefault(fileInfo.getUserId(), "unknown");
+                    fileInfo.setInheritedPublic(hasPublicAncestor(fileInfo, publicFolderIds));
                     fileSearchService.indexFile(FileDocumentConverter.toFileDocument(fileInfo, username));
                     successCount++;
                     
@@ -94,11 +98,14 @@ public class DataSyncService {
                        .eq(FileInfo::getDeleted, false);
             List<FileInfo> userFiles = fileMapper.selectList(queryWrapper);
             
+            Set<Long> publicFolderIds = collectPublicFolderIds(userFiles);
+            
             int successCount = 0;
             int failCount = 0;
             
             for (FileInfo fileInfo : userFiles) {
                 try {
+                    fileInfo.setInheritedPublic(hasPublicAncestor(fileInfo, publicFolderIds));
                     fileSearchService.indexFile(FileDocumentConverter.toFileDocument(fileInfo, user.getUsername()));
                     successCount++;
                 } catch (Exception e) {
@@ -114,4 +121,30 @@ public class DataSyncService {
             throw new RuntimeException("同步用户文件数据到ES失败", e);
         }
     }
-} 
\ No newline at end of file
+    
+    /**
+     * 收集公开目录的ID
+     */
+    private Set<Long> collectPublicFolderIds(List<FileInfo> files) {
+        return files.stream()
+                .filter(f -> Boolean.TRUE.equals(f.getIsDir()) && "public".equals(f.getVisibility()))
+                .map(FileInfo::getId)
+                .collect(Collectors.toSet());
+    }
+    
+    /**
+     * 根据物化路径判断文件是否有公开的祖先目录
+     */
+    private boolean hasPublicAncestor(FileInfo fileInfo, Set<Long> publicFolderIds) {
+        if (fileInfo.getPath() == null || publicFolderIds.isEmpty()) {
+            return false;
+        }
+        for (String part : fileInfo.getPath().split("/")) {
+            if (!part.isEmpty() && !part.equals(String.valueOf(fileInfo.getId()))
+                    && publicFolderIds.contains(Long.valueOf(part))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -3,6 +3,10 @@ package com.bytevault.app.search.service;
 import com.bytevault.app.search.document.FileDocument;
 import org.springframework.data.domain.Page;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
 public interface FileSearchService {
     
     /**
@@ -17,6 +21,27 @@ public interface FileSearchService {
      */
     void deleteFile(Long fileId);
     
+    /**
+     * 从ES索引中批量删除文件（delete-by-query）
+     * @param fileIds 文件ID列表
+     */
+    void deleteFiles(Collection<Long> fileIds);
+    
+    /**
+     * 批量更新目录下所有子孙节点的继承公开状态（update-by-query）
+     * @param pathPrefix 目录的物化路径
+     * @param folderId 目录ID（目录本身不更新）
+     * @param inheritedPublic 继承公开状态
+     */
+    void updateInheritedPublic(String pathPrefix, Long folderId, boolean inheritedPublic);
+    
+    /**
+     * 批量替换子树中所有文档的路径前缀（移动目录时调用，update-by-query）
+     * @param oldPath 原路径前缀
+     * @param newPath 新路径前缀
+     */
+    void replacePathPrefix(String oldPath, String newPath);
+    
     /**
      * 搜索私有文件
      * @param userId 用户ID
@@ -28,7 +53,7 @@ public interface FileSearchService {
     Page<FileDocument> searchPrivateFiles(Long userId, String keyword, int page, int size);
     
     /**
-     * 搜索公开文件
+     * 搜索公开文件（包括从公开目录继承公开状态的文件）
      * @param keyword 关键词
      * @param page 页码
      * @param size 每页大小
@@ -37,7 +62,28 @@ public interface FileSearchService {
     Page<FileDocument> searchPublicFiles(String keyword, int page, int size);
     
     /**
-     * 根据用户名搜索公开文件
+     * 在用户可访问的文件（自己的文件、公开文件及继承公开的文件）中按文件名或所有者用户名搜索
+     * @param userId 用户ID
+     * @param keyword 关键词
+     * @param page 页码（从0开始）
+     * @param size 每页大小
+     * @return 搜索结果
+     */
+    Page<FileDocument> searchAccessibleFiles(Long userId, String keyword, int page, int size);
+    
+    /**
+     * 游标方式在用户可访问的文件中搜索（search_after），排序键为 (update_time, id) 降序
+     * @param userId 用户ID
+     * @param keyword 关键词
+     * @param updateTime 游标：更新时间，第一页时为空
+     * @param id 游标：文件ID，第一页时为空
+     * @param limit 查询条数
+     * @return 搜索结果
+     */
+    List<FileDocument> searchAccessibleFilesAfter(Long userId, String keyword, LocalDateTime updateTime, Long id, int limit);
+    
+    /**
+     * 根据用户名搜索公开文件（包括从公开目录继承公开状态的文件）
      * @param username 用户名
      * @param page 页码
      * @param size 每页大小
@@ -5,18 +5,51 @@ import com.bytevault.app.search.repository.FileSearchRepository;
 import com.bytevault.app.search.service.FileSearchService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.reindex.UpdateByQueryRequest;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.Query;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class FileSearchServiceImpl implements FileSearchService {
     
     private final FileSearchRepository fileSearchRepository;
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final RestHighLevelClient elasticsearchClient;
+    
+    private static final String INDEX_NAME = "user_files";
+    
+    // 单次delete-by-query的最大ID数，低于ES默认的 index.max_terms_count
+    private static final int DELETE_BATCH_SIZE = 10_000;
     
     @Override
     public void indexFile(FileDocument fileDocument) {
@@ -38,6 +71,69 @@ public class FileSearchServiceImpl implements FileSearchService {
         }
     }
     
+    @Override
+    public void deleteFiles(Collection<Long> fileIds) {
+        if (fileIds == null || fileIds.isEmpty()) {
+            return;
+        }
+        try {
+            List<Long> ids = new ArrayList<>(fileIds);
+            for (int from = 0; from < ids.size(); from += DELETE_BATCH_SIZE) {
+                String[] batch = ids.subList(from, Math.min(ids.size(), from + DELETE_BATCH_SIZE)).stream()
+                        .map(String::valueOf)
+                        .toArray(String[]::new);
+                Query query = new NativeSearchQueryBuilder()
+                        .withQuery(QueryBuilders.idsQuery().addIds(batch))
+                        .build();
+                elasticsearchOperations.delete(query, FileDocument.class);
+            }
+            log.info("已从ES索引批量删除文件: {} 个", ids.size());
+        } catch (Exception e) {
+            log.error("从ES索引批量删除文件失败: {} 个", fileIds.size(), e);
+        }
+    }
+    
+    @Override
+    public void updateInheritedPublic(String pathPrefix, Long folderId, boolean inheritedPublic) {
+        try {
+            UpdateByQueryRequest request = new UpdateByQueryRequest(INDEX_NAME);
+            request.setQuery(QueryBuilders.boolQuery()
+                    .filter(QueryBuilders.prefixQuery("path", pathPrefix))
+                    .mustNot(QueryBuilders.idsQuery().addIds(String.valueOf(folderId))));
+            request.setScript(new Script(ScriptType.INLINE, "painless",
+                    "ctx._source.inherited_public = params.value",
+                    Collections.singletonMap("value", inheritedPublic)));
+            // 并发写入产生的版本冲突跳过即可，这些文档会由各自的写入重新计算
+            request.setConflicts("proceed");
+            // 立即刷新，使随后对子目录的update-by-query能看到本次结果
+            request.setRefresh(true);
+            long updated = elasticsearchClient.updateByQuery(request, RequestOptions.DEFAULT).getUpdated();
+            log.info("已更新目录 {} 下文件的继承公开状态: {}, 文件数: {}", folderId, inheritedPublic, updated);
+        } catch (Exception e) {
+            log.error("更新目录 {} 下文件的继承公开状态失败", folderId, e);
+        }
+    }
+    
+    @Override
+    public void replacePathPrefix(String oldPath, String newPath) {
+        try {
+            UpdateByQueryRequest request = new UpdateByQueryRequest(INDEX_NAME);
+            request.setQuery(QueryBuilders.prefixQuery("path", oldPath));
+            Map<String, Object> params = new HashMap<>();
+            params.put("oldPath", oldPath);
+            params.put("newPath", newPath);
+            request.setScript(new Script(ScriptType.INLINE, "painless",
+                    "ctx._source.path = params.newPath + ctx._source.path.substring(params.oldPath.length())",
+                    params));
+            request.setConflicts("proceed");
+            request.setRefresh(true);
+            long updated = elasticsearchClient.updateByQuery(request, RequestOptions.DEFAULT).getUpdated();
+            log.info("已更新ES中的路径前缀: {} -> {}, 文件数: {}", oldPath, newPath, updated);
+        } catch (Exception e) {
+            log.error("更新ES中的路径前缀失败: {} -> {}", oldPath, newPath, e);
+        }
+    }
+    
     @Override
     public Page<FileDocument> searchPrivateFiles(Long userId, String keyword, int page, int size) {
         Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "updateTime"));
@@ -48,15 +144,59 @@ public class FileSearchServiceImpl implements FileSearchService {
     @Override
     public Page<FileDocument> searchPublicFiles(String keyword, int page, int size) {
         Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "updateTime"));
-        return fileSearchRepository.findByFileNameContainingAndVisibilityAndIsDeleted(
-                keyword, "public", false, pageable);
+        return searchPublic(QueryBuilders.queryStringQuery("*" + QueryParser.escape(keyword) + "*")
+                .field("file_name")
+                .analyzeWildcard(true), pageable);
     }
     
     @Override
     public Page<FileDocument> searchPublicFilesByUsername(String username, int page, int size) {
         Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "updateTime"));
-        return fileSearchRepository.findByUsernameContainingAndVisibilityAndIsDeleted(
-                username, "public", false, pageable);
+        return searchPublic(QueryBuilders.queryStringQuery("*" + QueryParser.escape(username) + "*")
+                .field("username")
+                .analyzeWildcard(true), pageable);
+    }
+    
+    @Override
+    public Page<FileDocument> searchAccessibleFiles(Long userId, String keyword, int page, int size) {
+        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "updateTime"));
+        return search(accessibleQuery(userId, keyword), pageable);
+    }
+    
+    @Override
+    public List<FileDocument> searchAccessibleFilesAfter(Long userId, String keyword, LocalDateTime updateTime, Long id, int limit) {
+        // id 作为第二排序键保证游标唯一，与数据库游标分页的排序一致
+        Pageable pageable = PageRequest.of(0, limit,
+                Sort.by(Sort.Direction.DESC, "updateTime").and(Sort.by(Sort.Direction.DESC, "id")));
+        Query searchQuery = new NativeSearchQueryBuilder()
+                .withQuery(accessibleQuery(userId, keyword))
+                .withPageable(pageable)
+                .build();
+        if (id != null && updateTime != null) {
+            // 日期字段的排序值为UTC毫秒数，索引中的时间不带时区，按UTC解析
+            searchQuery.setSearchAfter(Arrays.asList(updateTime.toInstant(ZoneOffset.UTC).toEpochMilli(), id));
+        }
+        SearchHits<FileDocument> hits = elasticsearchOperations.search(searchQuery, FileDocument.class);
+        return hits.getSearchHits().stream()
+                .map(SearchHit::getContent)
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * 用户可访问的文件（自己的文件、公开文件及继承公开的文件）中按文件名或所有者用户名匹配
+     */
+    private BoolQueryBuilder accessibleQuery(Long userId, String keyword) {
+        return QueryBuilders.boolQuery()
+                .must(QueryBuilders.queryStringQuery("*" + QueryParser.escape(keyword) + "*")
+                        .field("file_name")
+                        .field("username")
+                        .analyzeWildcard(true))
+                .filter(QueryBuilders.termQuery("is_deleted", false))
+                .filter(QueryBuilders.boolQuery()
+                        .should(QueryBuilders.termQuery("user_id", userId))
+                        .should(QueryBuilders.termQuery("visibility", "public"))
+                        .should(QueryBuilders.termQuery("inherited_public", true))
+                        .minimumShouldMatch(1));
     }
     
     @Override
@@ -72,6 +212,32 @@ public class FileSearchServiceImpl implements FileSearchService {
         return fileSearchRepository.findByVisibilityAndIsDeleted("public", false, pageable);
     }
     
+    /**
+     * 在公开文件（自身公开或从公开目录继承）范围内搜索
+     */
+    private Page<FileDocument> searchPublic(QueryBuilder keywordQuery, Pageable pageable) {
+        BoolQueryBuilder query = QueryBuilders.boolQuery()
+                .must(keywordQuery)
+                .filter(QueryBuilders.termQuery("is_deleted", false))
+                .filter(QueryBuilders.boolQuery()
+                        .should(QueryBuilders.termQuery("visibility", "public"))
+                        .should(QueryBuilders.termQuery("inherited_public", true))
+                        .minimumShouldMatch(1));
+        return search(query, pageable);
+    }
+    
+    private Page<FileDocument> search(QueryBuilder query, Pageable pageable) {
+        Query searchQuery = new NativeSearchQueryBuilder()
+                .withQuery(query)
+                .withPageable(pageable)
+                .build();
+        SearchHits<FileDocument> hits = elasticsearchOperations.search(searchQuery, FileDocument.class);
+        List<FileDocument> content = hits.getSearchHits().stream()
+                .map(SearchHit::getContent)
+                .collect(Collectors.toList());
+        return new PageImpl<>(content, pageable, hits.getTotalHits());
+    }
+    
     @Override
     public void clearAllFiles() {
         try {
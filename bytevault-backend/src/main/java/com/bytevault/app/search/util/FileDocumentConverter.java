@@ -19,6 +19,8 @@ public class FileDocumentConverter {
                 .fileType(fileInfo.getFileType())
                 .isDir(fileInfo.getIsDir())
                 .visibility(fileInfo.getVisibility())
+                .path(fileInfo.getPath())
+                .inheritedPublic(Boolean.TRUE.equals(fileInfo.getInheritedPublic()))
                 .isDeleted(fileInfo.getDeleted())
                 .createTime(fileInfo.getCreateTime())
                 .updateTime(fileInfo.getUpdateTime())
@@ -38,6 +40,8 @@ public class FileDocumentConverter {
                 .fileType(fileDocument.getFileType())
                 .isDir(fileDocument.getIsDir())
                 .visibility(fileDocument.getVisibility())
+                .path(fileDocument.getPath())
+                .inheritedPublic(fileDocument.getInheritedPublic())
                 .deleted(fileDocument.getIsDeleted())
                 .createTime(fileDocument.getCreateTime())
                 .updateTime(fileDocument.getUpdateTime())
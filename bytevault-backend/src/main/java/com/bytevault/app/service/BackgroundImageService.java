@@ -51,4 +51,12 @@ public interface BackgroundImageService {
      * @return 背景图片信息
      */
     BackgroundImage getBackgroundImageById(Long imageId);
+    
+    /**
+     * 根据期望显示宽度选择背景图片的响应式变体
+     * @param objectName 主图对象名
+     * @param width 期望宽度，为空时返回主图
+     * @return 变体对象名（变体可能不存在，调用方需回退到主图）
+     */
+    String resolveVariantObjectName(String objectName, Integer width);
 } 
\ No newline at end of file
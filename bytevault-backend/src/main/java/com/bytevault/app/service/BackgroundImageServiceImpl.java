@@ -1,5 +1,7 @@
 package com.bytevault.app.service;
 
+import com.bytevault.app.auth.service.PrincipalCache;
+import com.bytevault.app.file.util.ImageUtils;
 import com.bytevault.app.mapper.BackgroundImageMapper;
 import com.bytevault.app.mapper.UserMapper;
 import com.bytevault.app.model.BackgroundImage;
@@ -12,7 +14,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.InputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
@@ -25,6 +28,13 @@ public class BackgroundImageServiceImpl implements BackgroundImageService {
     private final BackgroundImageMapper backgroundImageMapper;
     private final UserMapper userMapper;
     private final MinioClient minioClient;
+    private final PrincipalCache principalCache;
+    
+    // 背景图主图最大宽度
+    private static final int MAX_WIDTH = 1920;
+    // 响应式变体宽度（从大到小）
+    private static final int[] VARIANT_WIDTHS = {1280, 640};
+    private static final float JPEG_QUALITY = 0.82f;
     
     @Value("${minio.backgroundBucketName}")
     private String backgroundBucket;
@@ -34,10 +44,12 @@ public class BackgroundImageServiceImpl implements BackgroundImageService {
     
     public BackgroundImageServiceImpl(BackgroundImageMapper backgroundImageMapper, 
                                      UserMapper userMapper, 
-                                     MinioClient minioClient) {
+                                     MinioClient minioClient,
+                                     PrincipalCache principalCache) {
         this.backgroundImageMapper = backgroundImageMapper;
         this.userMapper = userMapper;
         this.minioClient = minioClient;
+        this.principalCache = principalCache;
     }
     
     @Override
@@ -50,27 +62,39 @@ public class BackgroundImageServiceImpl implements BackgroundImageService {
                 throw new IllegalArgumentException("只支持上传图片文件");
             }
             
-            // 生成唯一文件名
-            String originalFilename = file.getOriginalFilename();
-            
-            // 构建对象名: 用户ID/文件名
-            String objectName = userId + "/" + originalFilename;
-            
             // 检查桶是否存在，不存在则创建
             boolean bucketExists = minioClient.bucketExists(BucketExistsArgs.builder().bucket(backgroundBucket).build());
             if (!bucketExists) {
                 minioClient.makeBucket(MakeBucketArgs.builder().bucket(backgroundBucket).build());
             }
             
-            // 上传文件到MinIO
-            InputStream inputStream = file.getInputStream();
-            minioClient.putObject(
-                    PutObjectArgs.builder()
-                            .bucket(backgroundBucket)
-                            .object(objectName)
-                            .stream(inputStream, file.getSize(), -1)
-                            .contentType(contentType)
-                            .build());
+            // 解码图片，GIF（可能是动图）和无法解码的格式保留原图
+            byte[] data = file.getBytes();
+            BufferedImage image = "image/gif".equals(contentType) ? null : ImageUtils.read(data);
+            
+            // 构建对象名: 用户ID/唯一文件名，内容不可变，可长期缓存
+            String objectName;
+            if (image == null) {
+                String originalFilename = file.getOriginalFilename();
+                String fileExtension = "";
+                if (originalFilename != null && originalFilename.contains(".")) {
+                    fileExtension = originalFilename.substring(originalFilename.lastIndexOf("."));
+                }
+                objectName = userId + "/" + UUID.randomUUID() + fileExtension;
+                putImage(objectName, data, contentType);
+            } else {
+                // 主图缩放到最大宽度并转为JPEG，再逐级生成较小宽度的变体
+                objectName = userId + "/" + UUID.randomUUID() + ".jpg";
+                BufferedImage current = ImageUtils.scaleToWidth(image, MAX_WIDTH);
+                putImage(objectName, ImageUtils.toJpeg(current, JPEG_QUALITY), "image/jpeg");
+                for (int width : VARIANT_WIDTHS) {
+                    if (width >= current.getWidth()) {
+                        continue;
+                    }
+                    current = ImageUtils.scaleToWidth(current, width);
+                    putImage(buildVariantObjectName(objectName, width), ImageUtils.toJpeg(current, JPEG_QUALITY), "image/jpeg");
+                }
+            }
             
             // 构建访问URL - 使用代理URL
             String imageUrl = "/api/users/background/" + objectName;
@@ -122,6 +146,14 @@ public class BackgroundImageServiceImpl implements BackgroundImageService {
                                 .bucket(backgroundBucket)
                                 .object(objectName)
                                 .build());
+                // 删除响应式变体（不存在时MinIO直接返回成功）
+                for (int width : VARIANT_WIDTHS) {
+                    minioClient.removeObject(
+                            RemoveObjectArgs.builder()
+                                    .bucket(backgroundBucket)
+                                    .object(buildVariantObjectName(objectName, width))
+                                    .build());
+                }
             }
             
             // 如果是当前背景，重置用户的背景图片ID
@@ -130,6 +162,7 @@ public class BackgroundImageServiceImpl implements BackgroundImageService {
                     user.getCurrentBackgroundImageId().equals(imageId)) {
                 user.setCurrentBackgroundImageId(null);
                 userMapper.updateById(user);
+                principalCache.invalidate(userId);
             }
             
             // 从数据库中删除
@@ -169,6 +202,7 @@ public class BackgroundImageServiceImpl implements BackgroundImageService {
             
             user.setCurrentBackgroundImageId(imageId);
             int result = userMapper.updateById(user);
+            principalCache.invalidate(userId);
             
             log.info("设置当前背景图片成功: {}, 用户ID: {}", imageId, userId);
             return result > 0;
@@ -205,6 +239,45 @@ public class BackgroundImageServiceImpl implements BackgroundImageService {
         return backgroundImageMapper.getBackgroundImageById(imageId);
     }
     
+    @Override
+    public String resolveVariantObjectName(String objectName, Integer width) {
+        if (width == null || width <= 0) {
+            return objectName;
+        }
+        // 选择不小于期望宽度的最小变体，都不满足时使用主图
+        String result = objectName;
+        for (int variantWidth : VARIANT_WIDTHS) {
+            if (variantWidth >= width) {
+                result = buildVariantObjectName(objectName, variantWidth);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 上传图片内容到背景图片桶
+     */
+    private void putImage(String objectName, byte[] data, String contentType) throws Exception {
+        minioClient.putObject(
+                PutObjectArgs.builder()
+                        .bucket(backgroundBucket)
+                        .object(objectName)
+                        .stream(new ByteArrayInputStream(data), data.length, -1)
+                        .contentType(contentType)
+                        .build());
+    }
+    
+    /**
+     * 构建变体对象名: 用户ID/文件名_w宽度.扩展名
+     */
+    private String buildVariantObjectName(String objectName, int width) {
+        int dot = objectName.lastIndexOf('.');
+        if (dot <= objectName.lastIndexOf('/')) {
+            return objectName + "_w" + width;
+        }
+        return objectName.substring(0, dot) + "_w" + width + objectName.substring(dot);
+    }
+    
     /**
      * 从URL中提取对象名
      * @param url 图片URL
@@ -0,0 +1,227 @@
+package com.bytevault.app.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * 基于Redis的定时任务主节点租约
+ * 多节点部署时每个 @Scheduled 任务在所有节点同时触发，需要全局只执行一次的任务（清理、同步等）
+ * 先获取对应的租约：租约未被持有时当前节点获得租约及一个递增的栅栏令牌，租约在有效期内由持有节点
+ * 每次执行时续期，其他节点跳过执行；持有节点宕机后租约过期，由下一个触发的节点接管。
+ * 租约有效期应大于任务周期，保证同一节点连续持有；长时间运行的任务可用栅栏令牌检查租约是否仍然有效，
+ * 失去租约后停止处理，避免与新的持有者同时执行。
+ * 注意：栅栏令牌只用于 {@link #isHeld} 检查，不会附加到任务的写操作上，数据库和Redis不校验令牌。
+ * 检查通过后进程暂停（如长时间GC）或网络延迟超过租约有效期时，旧持有者的写入仍可能与新持有者重叠，
+ * 因此受租约保护的任务必须是幂等的（如按条件删除过期数据），重复或并发执行不能产生错误结果；
+ * 不满足幂等的写入需要自行携带栅栏令牌做条件更新。
+ */
+@Slf4j
+@Component
+public class LeaderLease {
+
+    // Redis键前缀，任务名作为哈希标签，租约键和栅栏键位于同一槽位
+    private static final String LEASE_KEY_PREFIX = "lease:";
+
+    /**
+     * 获取或续期租约，返回栅栏令牌，租约被其他节点持有时返回0
+     * KEYS[1]=租约键 KEYS[2]=栅栏键 ARGV[1]=节点ID ARGV[2]=有效期(毫秒)
+     * 租约值为 {栅栏令牌}:{节点ID}
+     */
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "local v = redis.call('GET', KEYS[1]) " +
+            "if v then " +
+            "  local sep = string.find(v, ':', 1, true) " +
+            "  if string.sub(v, sep + 1) == ARGV[1] then " +
+            "    redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+            "    return tonumber(string.sub(v, 1, sep - 1)) " +
+            "  end " +
+            "  return 0 " +
+            "end " +
+            "local fence = redis.call('INCR', KEYS[2]) " +
+            "redis.call('SET', KEYS[1], fence .. ':' .. ARGV[1], 'PX', ARGV[2]) " +
+            "return fence",
+            Long.class);
+
+    /**
+     * 释放本节点持有的租约
+     * KEYS[1]=租约键 ARGV[1]=租约值
+     */
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
+            "return 0",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 本节点ID：主机名加随机后缀，同一主机上的多个实例互不冲突
+     */
+    private final String nodeId;
+
+    /**
+     * 任务名 -> 执行统计
+     */
+    private final ConcurrentHashMap<String, JobStats> stats = new ConcurrentHashMap<>();
+
+    public LeaderLease(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        this.nodeId = host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 仅当本节点持有（或成功获取）租约时执行任务，并记录执行耗时
+     * 获取租约失败（包括Redis不可用）时跳过本次执行
+     * @param job 任务名
+     * @param leaseTtl 租约有效期，应大于任务周期
+     * @param task 任务，参数为本次执行的栅栏令牌
+     * @return 是否执行了任务
+     */
+    public boolean runIfLeader(String job, Duration leaseTtl, LongConsumer task) {
+        JobStats jobStats = stats.computeIfAbsent(job, k -> new JobStats());
+        long fence = tryAcquire(job, leaseTtl);
+        if (fence <= 0) {
+            jobStats.skipped.incrementAndGet();
+            return false;
+        }
+
+        long start = System.currentTimeMillis();
+        jobStats.lastStartTime.set(start);
+        try {
+            task.accept(fence);
+        } catch (RuntimeException e) {
+            jobStats.failures.incrementAndGet();
+            throw e;
+        } finally {
+            long duration = System.currentTimeMillis() - start;
+            jobStats.runs.incrementAndGet();
+            jobStats.lastDurationMillis.set(duration);
+            jobStats.maxDurationMillis.accumulateAndGet(duration, Math::max);
+            log.info("定时任务 {} 执行完成: 栅栏令牌={}, 耗时={}ms", job, fence, duration);
+        }
+        return true;
+    }
+
+    /**
+     * 获取或续期租约
+     * @return 栅栏令牌，租约被其他节点持有或Redis不可用时返回0
+     */
+    public long tryAcquire(String job, Duration leaseTtl) {
+        JobStats jobStats = stats.computeIfAbsent(job, k -> new JobStats());
+        try {
+            Long fence = stringRedisTemplate.execute(ACQUIRE_SCRIPT,
+                    Arrays.asList(leaseKey(job), fenceKey(job)), nodeId, String.valueOf(leaseTtl.toMillis()));
+            long result = fence != null ? fence : 0;
+            long previous = jobStats.fence.getAndSet(result);
+            if (result > 0 && result != previous) {
+                log.info("获得定时任务租约: 任务={}, 节点={}, 栅栏令牌={}", job, nodeId, result);
+            }
+            return result;
+        } catch (Exception e) {
+            jobStats.fence.set(0);
+            log.warn("获取定时任务租约失败: 任务={}, {}", job, e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * 检查本节点是否仍以指定栅栏令牌持有租约，长时间运行的任务在每批处理前调用
+     * 只能缩小与新持有者重叠执行的窗口，不能完全避免，见类注释
+     */
+    public boolean isHeld(String job, long fence) {
+        try {
+            return (fence + ":" + nodeId).equals(stringRedisTemplate.opsForValue().get(leaseKey(job)));
+        } catch (Exception e) {
+            log.warn("检查定时任务租约失败: 任务={}, {}", job, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 各任务的租约持有者及执行统计，供管理接口查看
+     */
+    public List<Map<String, Object>> getStatus() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        stats.forEach((job, jobStats) -> {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("job", job);
+            String holder = null;
+            try {
+                String value = stringRedisTemplate.opsForValue().get(leaseKey(job));
+                holder = value != null ? value.substring(value.indexOf(':') + 1) : null;
+            } catch (Exception e) {
+                log.warn("读取定时任务租约失败: 任务={}, {}", job, e.getMessage());
+            }
+            status.put("holder", holder);
+            status.put("leader", nodeId.equals(holder));
+            status.put("fence", jobStats.fence.get());
+            status.put("runs", jobStats.runs.get());
+            status.put("skipped", jobStats.skipped.get());
+            status.put("failures", jobStats.failures.get());
+            status.put("lastStartTime", jobStats.lastStartTime.get() > 0 ? new Date(jobStats.lastStartTime.get()) : null);
+            status.put("lastDurationMillis", jobStats.lastDurationMillis.get());
+            status.put("maxDurationMillis", jobStats.maxDurationMillis.get());
+            result.add(status);
+        });
+        result.sort(Comparator.comparing(status -> (String) status.get("job")));
+        return result;
+    }
+
+    /**
+     * 关闭时释放本节点持有的租约，其他节点无需等待租约过期即可接管
+     */
+    @PreDestroy
+    public void releaseAll() {
+        stats.forEach((job, jobStats) -> {
+            long fence = jobStats.fence.get();
+            if (fence <= 0) {
+                return;
+            }
+            try {
+                stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(leaseKey(job)),
+                        fence + ":" + nodeId);
+            } catch (Exception e) {
+                log.warn("释放定时任务租约失败: 任务={}, {}", job, e.getMessage());
+            }
+        });
+    }
+
+    private static String leaseKey(String job) {
+        return LEASE_KEY_PREFIX + "{" + job + "}";
+    }
+
+    private static String fenceKey(String job) {
+        return LEASE_KEY_PREFIX + "{" + job + "}:fence";
+    }
+
+    private static final class JobStats {
+        // 最近一次获取租约得到的栅栏令牌，未持有时为0
+        private final AtomicLong fence = new AtomicLong();
+        private final AtomicLong runs = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong lastStartTime = new AtomicLong();
+        private final AtomicLong lastDurationMillis = new AtomicLong();
+        private final AtomicLong maxDurationMillis = new AtomicLong();
+    }
+}
@@ -0,0 +1,258 @@
+package com.bytevault.app.service;
+
+import com.bytevault.app.mapper.RoleMapper;
+import com.bytevault.app.model.Permission;
+import com.bytevault.app.model.Role;
+import com.bytevault.app.model.UserRolePermission;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+
+/**
+ * 角色-权限关系图的进程内快照
+ * 全部角色及其权限一次查询加载为不可变快照，读取时不访问数据库。
+ * 角色或角色权限变更后递增Redis中的版本号并通过发布订阅通知所有节点，节点收到通知后标记快照过期，
+ * 下次读取时重建；另有定时任务比对版本号，防止漏收通知导致快照长期不更新。
+ */
+@Slf4j
+@Component
+public class RoleGraphCache implements MessageListener {
+
+    // Redis键及频道
+    private static final String VERSION_KEY = "rbac:version";
+    private static final String CHANNEL = "rbac:changed";
+
+    private final RoleMapper roleMapper;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 当前快照，重建时整体替换
+     */
+    private volatile Snapshot snapshot;
+
+    /**
+     * 快照是否已过期，过期后下次读取时重建
+     */
+    private volatile boolean stale = true;
+
+    /**
+     * 本节点的快照重建次数，供依赖角色权限的缓存判断是否需要重新加载
+     */
+    private long generation;
+
+    public RoleGraphCache(RoleMapper roleMapper, StringRedisTemplate stringRedisTemplate,
+                          RedisMessageListenerContainer listenerContainer) {
+        this.roleMapper = roleMapper;
+        this.stringRedisTemplate = stringRedisTemplate;
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * 获取当前快照的代数，每次重建后递增
+     */
+    public long getGeneration() {
+        return current().generation;
+    }
+
+    /**
+     * 获取全部角色（含权限），按角色ID排序
+     */
+    public List<Role> getAllRoles() {
+        List<Role> roles = new ArrayList<>();
+        for (Role role : current().rolesById.values()) {
+            roles.add(copy(role));
+        }
+        return roles;
+    }
+
+    /**
+     * 根据ID获取角色（含权限），不存在时返回null
+     */
+    public Role getRole(Long roleId) {
+        Role role = current().rolesById.get(roleId);
+        return role != null ? copy(role) : null;
+    }
+
+    /**
+     * 根据名称获取角色（含权限），不存在时返回null
+     */
+    public Role getRoleByName(String name) {
+        Role role = current().rolesByName.get(name);
+        return role != null ? copy(role) : null;
+    }
+
+    /**
+     * 将角色ID列表解析为角色（含权限），忽略已删除的角色
+     */
+    public List<Role> resolve(Collection<Long> roleIds) {
+        Snapshot current = current();
+        List<Role> roles = new ArrayList<>(roleIds.size());
+        for (Long roleId : roleIds) {
+            Role role = current.rolesById.get(roleId);
+            if (role != null) {
+                roles.add(copy(role));
+            }
+        }
+        return roles;
+    }
+
+    /**
+     * 角色或角色权限变更后调用：递增版本号并通知所有节点
+     * 在事务中调用时推迟到事务提交后执行，避免其他节点读到未提交的数据
+     */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publishChange();
+                }
+            });
+        } else {
+            publishChange();
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        log.debug("收到角色权限变更通知: {}", new String(message.getBody()));
+        stale = true;
+    }
+
+    /**
+     * 定时比对Redis中的版本号，兜底处理漏收的变更通知
+     */
+    @Scheduled(fixedRate = 60 * 1000)
+    public void checkVersion() {
+        Snapshot current = snapshot;
+        if (current == null || stale) {
+            return;
+        }
+        try {
+            if (readVersion() != current.version) {
+                log.info("角色权限版本号已变化，标记快照过期");
+                stale = true;
+            }
+        } catch (Exception e) {
+            log.warn("检查角色权限版本号失败: {}", e.getMessage());
+        }
+    }
+
+    private void publishChange() {
+        stale = true;
+        try {
+            Long version = stringRedisTemplate.opsForValue().increment(VERSION_KEY);
+            stringRedisTemplate.convertAndSend(CHANNEL, String.valueOf(version));
+        } catch (Exception e) {
+            log.error("发布角色权限变更通知失败: {}", e.getMessage(), e);
+        }
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null || stale) {
+            current = rebuild();
+        }
+        return current;
+    }
+
+    /**
+     * 从数据库重建快照，同一时刻只有一个线程重建，其余线程等待后直接使用新快照
+     */
+    private synchronized Snapshot rebuild() {
+        if (snapshot != null && !stale) {
+            return snapshot;
+        }
+        // 先清除过期标记再读取版本号和数据，重建期间到达的变更通知会再次标记过期
+        stale = false;
+        long version;
+        try {
+            version = readVersion();
+        } catch (Exception e) {
+            log.warn("读取角色权限版本号失败: {}", e.getMessage());
+            version = snapshot != null ? snapshot.version : 0;
+        }
+
+        List<UserRolePermission> rows;
+        try {
+            rows = roleMapper.selectRolePermissionGraph();
+        } catch (RuntimeException e) {
+            // 加载失败时保持过期状态，下次读取重试
+            stale = true;
+            throw e;
+        }
+
+        Map<Long, Role> rolesById = new LinkedHashMap<>();
+        Map<Long, List<Permission>> permissionsByRole = new HashMap<>();
+        for (UserRolePermission row : rows) {
+            List<Permission> permissions = permissionsByRole.computeIfAbsent(row.getRoleId(), k -> new ArrayList<>());
+            rolesById.computeIfAbsent(row.getRoleId(), k -> Role.builder()
+                    .id(row.getRoleId())
+                    .name(row.getRoleName())
+                    .description(row.getRoleDescription())
+                    .deleted(0)
+                    .build());
+            if (row.getPermissionId() != null) {
+                permissions.add(Permission.builder()
+                        .id(row.getPermissionId())
+                        .name(row.getPermissionName())
+                        .description(row.getPermissionDescription())
+                        .deleted(0)
+                        .build());
+            }
+        }
+
+        Map<String, Role> rolesByName = new HashMap<>();
+        for (Role role : rolesById.values()) {
+            role.setPermissions(Collections.unmodifiableList(permissionsByRole.get(role.getId())));
+            rolesByName.put(role.getName(), role);
+        }
+
+        Snapshot rebuilt = new Snapshot(version, ++generation, Collections.unmodifiableMap(rolesById),
+                Collections.unmodifiableMap(rolesByName));
+        snapshot = rebuilt;
+        log.info("角色权限快照重建完成: 版本={}, 角色数={}", version, rolesById.size());
+        return rebuilt;
+    }
+
+    private long readVersion() {
+        String version = stringRedisTemplate.opsForValue().get(VERSION_KEY);
+        return version != null ? Long.parseLong(version) : 0;
+    }
+
+    /**
+     * 返回角色的浅拷贝，权限列表为快照中的不可变列表，调用方修改角色字段不会影响快照
+     */
+    private Role copy(Role role) {
+        return Role.builder()
+                .id(role.getId())
+                .name(role.getName())
+                .description(role.getDescription())
+                .deleted(role.getDeleted())
+                .permissions(role.getPermissions())
+                .build();
+    }
+
+    private static final class Snapshot {
+        private final long version;
+        private final long generation;
+        private final Map<Long, Role> rolesById;
+        private final Map<String, Role> rolesByName;
+
+        private Snapshot(long version, long generation, Map<Long, Role> rolesById, Map<String, Role> rolesByName) {
+            this.version = version;
+            this.generation = generation;
+            this.rolesById = rolesById;
+            this.rolesByName = rolesByName;
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.bytevault.app.service;
 
 import com.bytevault.app.model.Role;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface RoleService {
     
@@ -25,6 +27,12 @@ public interface RoleService {
      */
     List<Role> getRolesByUserId(Long userId);
     
+    /**
+     * 批量获取多个用户的角色列表（含权限），一次查询完成
+     * @return 用户ID到角色列表的映射，没有角色的用户不在映射中
+     */
+    Map<Long, List<Role>> getRolesByUserIds(Collection<Long> userIds);
+    
     /**
      * 创建角色
      */
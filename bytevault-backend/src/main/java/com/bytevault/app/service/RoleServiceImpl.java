@@ -1,81 +1,79 @@
 package com.bytevault.app.service;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.bytevault.app.mapper.PermissionMapper;
+import com.bytevault.app.auth.service.PrincipalCache;
 import com.bytevault.app.mapper.RoleMapper;
-import com.bytevault.app.model.Permission;
 import com.bytevault.app.model.Role;
+import com.bytevault.app.model.UserRolePermission;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @Service
 public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements RoleService {
 
     private final RoleMapper roleMapper;
-    private final PermissionMapper permissionMapper;
+    private final RoleGraphCache roleGraphCache;
+    private final PrincipalCache principalCache;
     private final JdbcTemplate jdbcTemplate;
 
-    public RoleServiceImpl(RoleMapper roleMapper, PermissionMapper permissionMapper, JdbcTemplate jdbcTemplate) {
+    public RoleServiceImpl(RoleMapper roleMapper, RoleGraphCache roleGraphCache, PrincipalCache principalCache,
+                           JdbcTemplate jdbcTemplate) {
         this.roleMapper = roleMapper;
-        this.permissionMapper = permissionMapper;
+        this.roleGraphCache = roleGraphCache;
+        this.principalCache = principalCache;
         this.jdbcTemplate = jdbcTemplate;
     }
 
+    // 角色及权限从进程内快照读取，只有用户-角色关系需要查询数据库
+
     @Override
     public List<Role> getAllRoles() {
-        List<Role> roles = this.list();
-        // 加载每个角色的权限
-        roles.forEach(this::loadRolePermissions);
-        return roles;
+        return roleGraphCache.getAllRoles();
     }
 
     @Override
     public Role getRoleById(Long id) {
-        Role role = this.getById(id);
-        if (role != null) {
-            loadRolePermissions(role);
-        }
-        return role;
+        return roleGraphCache.getRole(id);
     }
 
     @Override
     public Role getRoleByName(String name) {
-        LambdaQueryWrapper<Role> wrapper = new LambdaQueryWrapper<>();
-        wrapper.eq(Role::getName, name);
-        Role role = this.getOne(wrapper);
-        if (role != null) {
-            loadRolePermissions(role);
-        }
-        return role;
+        return roleGraphCache.getRoleByName(name);
     }
 
     @Override
     public List<Role> getRolesByUserId(Long userId) {
-        List<Role> roles = roleMapper.selectRolesByUserId(userId);
-        // 加载每个角色的权限
-        roles.forEach(this::loadRolePermissions);
-        return roles;
+        return roleGraphCache.resolve(roleMapper.selectRoleIdsByUserId(userId));
     }
 
-    /**
-     * 加载角色的权限
-     */
-    private void loadRolePermissions(Role role) {
-        List<Permission> permissions = permissionMapper.selectPermissionsByRoleId(role.getId());
-        role.setPermissions(permissions);
+    @Override
+    public Map<Long, List<Role>> getRolesByUserIds(Collection<Long> userIds) {
+        Map<Long, List<Role>> result = new HashMap<>();
+        if (userIds == null || userIds.isEmpty()) {
+            return result;
+        }
+        Map<Long, List<Long>> roleIdsByUser = new HashMap<>();
+        for (UserRolePermission row : roleMapper.selectRoleIdsByUserIds(userIds)) {
+            roleIdsByUser.computeIfAbsent(row.getUserId(), k -> new ArrayList<>()).add(row.getRoleId());
+        }
+        roleIdsByUser.forEach((userId, roleIds) -> result.put(userId, roleGraphCache.resolve(roleIds)));
+        return result;
     }
 
     @Override
     @Transactional
     public Role createRole(Role role) {
         this.save(role);
+        roleGraphCache.invalidate();
         return role;
     }
 
@@ -83,6 +81,7 @@ public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements Ro
     @Transactional
     public Role updateRole(Role role) {
         this.updateById(role);
+        roleGraphCache.invalidate();
         return role;
     }
 
@@ -94,7 +93,9 @@ public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements Ro
         // 再删除用户-角色关联
         jdbcTemplate.update("DELETE FROM user_role WHERE role_id = ?", id);
         // 最后删除角色
-        return this.removeById(id);
+        boolean removed = this.removeById(id);
+        roleGraphCache.invalidate();
+        return removed;
     }
 
     @Override
@@ -112,6 +113,7 @@ public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements Ro
                 }
                 jdbcTemplate.batchUpdate("INSERT INTO role_permission (role_id, permission_id) VALUES (?, ?)", batchArgs);
             }
+            roleGraphCache.invalidate();
             return true;
         } catch (Exception e) {
             log.error("为角色分配权限失败", e);
@@ -134,6 +136,7 @@ public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements Ro
                 }
                 jdbcTemplate.batchUpdate("INSERT INTO user_role (user_id, role_id) VALUES (?, ?)", batchArgs);
             }
+            principalCache.invalidate(userId);
             return true;
         } catch (Exception e) {
             log.error("为用户分配角色失败", e);
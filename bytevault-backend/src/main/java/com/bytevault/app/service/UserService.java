@@ -1,5 +1,6 @@
 package com.bytevault.app.service;
 
+import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.bytevault.app.model.User;
 import java.util.List;
 
@@ -15,6 +16,16 @@ public interface UserService {
      */
     List<User> getAllUsers();
     
+    /**
+     * 分页获取用户（包含角色及背景图片信息）
+     * 
+     * @param page 页码
+     * @param size 每页大小
+     * @param keyword 用户名关键字，为空时不过滤
+     * @return 用户分页结果
+     */
+    IPage<User> getUserPage(int page, int size, String keyword);
+    
     /**
      * 根据用户名获取用户
      * 
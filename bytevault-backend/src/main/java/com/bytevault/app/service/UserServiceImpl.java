@@ -1,6 +1,9 @@
 package com.bytevault.app.service;
 
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.bytevault.app.auth.service.PrincipalCache;
 import com.bytevault.app.mapper.BackgroundImageMapper;
 import com.bytevault.app.mapper.UserMapper;
 import com.bytevault.app.model.BackgroundImage;
@@ -11,21 +14,36 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements UserService {
 
+    // 批量加载关联信息时每批的用户数，控制IN列表长度
+    private static final int RELATION_BATCH_SIZE = 500;
+    // 分页查询的最大每页大小
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final BCryptPasswordEncoder passwordEncoder;
     private RoleService roleService;
     private final BackgroundImageMapper backgroundImageMapper;
     private BackgroundImageService backgroundImageService;
+    private final PrincipalCache principalCache;
 
-    public UserServiceImpl(BCryptPasswordEncoder passwordEncoder, BackgroundImageMapper backgroundImageMapper) {
+    public UserServiceImpl(BCryptPasswordEncoder passwordEncoder, BackgroundImageMapper backgroundImageMapper,
+                           PrincipalCache principalCache) {
         this.passwordEncoder = passwordEncoder;
         this.backgroundImageMapper = backgroundImageMapper;
+        this.principalCache = principalCache;
     }
 
     @Autowired
@@ -40,21 +58,25 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
 
     @Override
     public List<User> getAllUsers() {
-        // 获取所有用户
+        // 获取所有用户，按批次加载角色信息和背景图片URL
         List<User> users = this.list();
-
-        // 为每个用户加载角色信息
-        for (User user : users) {
-            List<Role> roles = roleService.getRolesByUserId(user.getId());
-            user.setRoles(roles);
-            
-            // 加载背景图片URL
-            loadBackgroundImageUrl(user);
+        for (int i = 0; i < users.size(); i += RELATION_BATCH_SIZE) {
+            loadRelations(users.subList(i, Math.min(i + RELATION_BATCH_SIZE, users.size())));
         }
-
         return users;
     }
 
+    @Override
+    public IPage<User> getUserPage(int page, int size, String keyword) {
+        int pageSize = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+        IPage<User> result = this.lambdaQuery()
+                .like(StringUtils.hasText(keyword), User::getUsername, keyword)
+                .orderByAsc(User::getId)
+                .page(new Page<>(Math.max(page, 1), pageSize));
+        loadRelations(result.getRecords());
+        return result;
+    }
+
     @Override
     public User getUserByUsername(String username) {
         User user = this.lambdaQuery()
@@ -109,13 +131,16 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
 
         // 更新用户
         this.updateById(user);
+        principalCache.invalidate(user.getId());
         return user;
     }
 
     @Override
     @Transactional
     public boolean deleteUser(Long id) {
-        return this.removeById(id);
+        boolean removed = this.removeById(id);
+        principalCache.invalidate(id);
+        return removed;
     }
 
     @Override
@@ -143,6 +168,37 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         return this.getById(id) != null;
     }
     
+    /**
+     * 批量加载一组用户的角色信息（含权限）和背景图片URL
+     * 无论用户数量多少，角色权限和背景图片各只需一次查询
+     * @param users 用户列表
+     */
+    private void loadRelations(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        List<Long> userIds = users.stream().map(User::getId).collect(Collectors.toList());
+        Map<Long, List<Role>> rolesByUser = roleService.getRolesByUserIds(userIds);
+
+        Set<Long> imageIds = users.stream()
+                .map(User::getCurrentBackgroundImageId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<Long, String> imageUrls = new HashMap<>();
+        if (!imageIds.isEmpty()) {
+            for (BackgroundImage image : backgroundImageMapper.getBackgroundImagesByIds(imageIds)) {
+                imageUrls.put(image.getId(), image.getImageUrl());
+            }
+        }
+
+        for (User user : users) {
+            user.setRoles(rolesByUser.getOrDefault(user.getId(), new ArrayList<>()));
+            if (user.getCurrentBackgroundImageId() != null) {
+                user.setBackgroundImageUrl(imageUrls.get(user.getCurrentBackgroundImageId()));
+            }
+        }
+    }
+
     /**
      * 加载用户的背景图片URL
      * @param user 用户对象
@@ -0,0 +1,72 @@
+-- 已有数据库的 user_files 表结构升级（新建库直接执行 user_files.sql 即可）
+
+-- 物化路径: /祖先ID/.../自身ID/，用于子树查询、移动和可见性继承
+ALTER TABLE user_files
+    ADD COLUMN path VARCHAR(1024) CHARACTER SET ascii DEFAULT NULL COMMENT '物化路径: /祖先ID/.../自身ID/' AFTER visibility;
+
+CREATE INDEX idx_user_path ON user_files(user_id, path);
+
+-- 回填已有数据的物化路径
+UPDATE user_files f
+JOIN (
+    WITH RECURSIVE tree AS (
+        SELECT id, CAST(CONCAT('/', id, '/') AS CHAR(1024)) AS path
+        FROM user_files
+        WHERE parent_id IS NULL OR parent_id = 0
+        UNION ALL
+        SELECT c.id, CONCAT(t.path, c.id, '/')
+        FROM user_files c
+        INNER JOIN tree t ON c.parent_id = t.id
+    )
+    SELECT id, path FROM tree
+) t ON f.id = t.id
+SET f.path = t.path;
+
+-- 列表排序键加入目录索引，并为公开广场增加排序索引，支持游标分页
+DROP INDEX idx_user_folder ON user_files;
+CREATE INDEX idx_user_folder ON user_files(user_id, parent_id, is_deleted, is_dir, update_time, id);
+CREATE INDEX idx_public_feed ON user_files(visibility, is_deleted, update_time, id);
+
+-- 用户存储用量表，并按现有文件回填
+CREATE TABLE IF NOT EXISTS user_storage_usage (
+    user_id      BIGINT PRIMARY KEY,
+    used_bytes   BIGINT NOT NULL DEFAULT 0 COMMENT '已用空间（字节）',
+    file_count   BIGINT NOT NULL DEFAULT 0 COMMENT '文件数',
+    quota_bytes  BIGINT DEFAULT NULL COMMENT '配额（字节），为空时使用默认配额',
+    update_time  DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+);
+
+INSERT INTO user_storage_usage (user_id, used_bytes, file_count)
+SELECT user_id, COALESCE(SUM(file_size), 0), COUNT(*)
+FROM user_files
+WHERE is_deleted = false AND is_dir = false
+GROUP BY user_id
+ON DUPLICATE KEY UPDATE used_bytes = VALUES(used_bytes), file_count = VALUES(file_count);
+
+
+-- 目录聚合信息（总大小、文件数、直接子项数），随增删改和移动增量维护
+ALTER TABLE user_files
+    ADD COLUMN total_size BIGINT NOT NULL DEFAULT 0 COMMENT '目录下所有文件的总大小（仅目录）' AFTER path,
+    ADD COLUMN file_count INT NOT NULL DEFAULT 0 COMMENT '目录下所有文件数（仅目录）' AFTER total_size,
+    ADD COLUMN child_count INT NOT NULL DEFAULT 0 COMMENT '直接子项数（仅目录）' AFTER file_count;
+
+-- 回填已有目录的聚合信息（显式保留 update_time，避免改变列表排序）
+UPDATE user_files d
+JOIN (
+    SELECT a.id, COALESCE(SUM(f.file_size), 0) AS total_size, COUNT(f.id) AS file_count
+    FROM user_files a
+    JOIN user_files f ON f.user_id = a.user_id AND f.path LIKE CONCAT(a.path, '%')
+        AND f.is_dir = false AND f.is_deleted = false
+    WHERE a.is_dir = true AND a.is_deleted = false
+    GROUP BY a.id
+) agg ON d.id = agg.id
+SET d.total_size = agg.total_size, d.file_count = agg.file_count, d.update_time = d.update_time;
+
+UPDATE user_files d
+JOIN (
+    SELECT parent_id, COUNT(*) AS child_count
+    FROM user_files
+    WHERE is_deleted = false AND parent_id IS NOT NULL AND parent_id <> 0
+    GROUP BY parent_id
+) c ON d.id = c.parent_id
+SET d.child_count = c.child_count, d.update_time = d.update_time;
@@ -1,5 +1,6 @@
 -- Active: 1751014198967@@127.0.0.1@3306@bytevault
 drop table if exists `user_files`;
+drop table if exists `user_storage_usage`;
 
 -- 创建用户文件表
 CREATE TABLE user_files (
@@ -11,12 +12,26 @@ CREATE TABLE user_files (
     file_type    VARCHAR(255),
     is_dir       BOOLEAN DEFAULT FALSE,
     visibility   ENUM('private', 'public') DEFAULT 'private',
+    path         VARCHAR(1024) CHARACTER SET ascii DEFAULT NULL COMMENT '物化路径: /祖先ID/.../自身ID/',
+    total_size   BIGINT NOT NULL DEFAULT 0 COMMENT '目录下所有文件的总大小（仅目录）',
+    file_count   INT NOT NULL DEFAULT 0 COMMENT '目录下所有文件数（仅目录）',
+    child_count  INT NOT NULL DEFAULT 0 COMMENT '直接子项数（仅目录）',
     is_deleted   BOOLEAN DEFAULT FALSE,
     create_time  DATETIME DEFAULT CURRENT_TIMESTAMP,
     update_time  DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
 );
 
 
+-- 用户存储用量（随上传、覆盖、删除增量维护）
+CREATE TABLE user_storage_usage (
+    user_id      BIGINT PRIMARY KEY,
+    used_bytes   BIGINT NOT NULL DEFAULT 0 COMMENT '已用空间（字节）',
+    file_count   BIGINT NOT NULL DEFAULT 0 COMMENT '文件数',
+    quota_bytes  BIGINT DEFAULT NULL COMMENT '配额（字节），为空时使用默认配额',
+    update_time  DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+);
+
+
 create table user_background_images
 (
     id          bigint primary key auto_increment,
@@ -29,11 +44,17 @@ create table user_background_images
 -- 背景图片索引
 CREATE INDEX idx_user_id ON user_background_images(user_id);
 
--- 查询某用户某文件夹下的文件（核心索引）
-CREATE INDEX idx_user_folder ON user_files(user_id, parent_id, is_deleted);
+-- 查询某用户某文件夹下的文件（核心索引，包含列表排序键，支持游标分页）
+CREATE INDEX idx_user_folder ON user_files(user_id, parent_id, is_deleted, is_dir, update_time, id);
+
+-- 公开广场按更新时间排序（游标分页）
+CREATE INDEX idx_public_feed ON user_files(visibility, is_deleted, update_time, id);
 
 -- 最近修改排序用
 CREATE INDEX idx_user_update_time ON user_files(user_id, is_deleted, update_time);
 
 -- 文件名前缀查询
-CREATE INDEX idx_file_name_prefix ON user_files(file_name);
\ No newline at end of file
+CREATE INDEX idx_file_name_prefix ON user_files(file_name);
+
+-- 子树查询（按物化路径前缀）
+CREATE INDEX idx_user_path ON user_files(user_id, path);
\ No newline at end of file
@@ -23,6 +23,27 @@ export function getAllUsers(): Promise<User[]> {
   })
 }
 
+export interface UserPage {
+  users: User[]
+  total: number
+  page: number
+  size: number
+}
+
+/**
+ * 分页获取用户
+ * @param page 页码
+ * @param size 每页大小
+ * @param keyword 用户名关键字
+ */
+export function getUserPage(page: number, size: number, keyword?: string): Promise<UserPage> {
+  return request({
+    url: '/api/admin/users/page',
+    method: 'get',
+    params: { page, size, keyword: keyword || undefined }
+  })
+}
+
 /**
  * 获取所有角色
  */
@@ -6,9 +6,20 @@ import type { UserInfo } from '@/stores/user'
  */
 export interface LoginResponse {
   token: string
+  refreshToken: string
+  expiresIn: number
   user: UserInfo
 }
 
+/**
+ * 刷新令牌响应接口
+ */
+export interface RefreshResponse {
+  token: string
+  refreshToken: string
+  expiresIn: number
+}
+
 /**
  * 注册响应接口
  */
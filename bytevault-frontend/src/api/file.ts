@@ -1,5 +1,4 @@
 import request from '@/utils/request'
-import axios from 'axios'
 
 /**
  * 上传文件 (使用断点续传实现)
@@ -27,32 +26,38 @@ export async function uploadFile(file: File, parentId: number = 0, isPublic: boo
   
   const uploadId = initResponse.uploadId
   
-  // 获取已上传的分块列表
-  const chunksResponse: any = await getUploadedChunks(uploadId)
-  const uploadedChunks = chunksResponse?.uploadedChunks || []
-  
-  // 计算总分块数
-  const totalChunks = Math.ceil(file.size / CHUNK_SIZE)
-  
-  // 上传分块
-  for (let i = 0; i < totalChunks; i++) {
-    // 如果分块已上传，则跳过
-    if (uploadedChunks.includes(i)) {
-      continue
-    }
+  try {
+    // 获取已上传的分块列表
+    const chunksResponse: any = await getUploadedChunks(uploadId)
+    const uploadedChunks = chunksResponse?.uploadedChunks || []
     
-    // 计算分块的起始和结束位置
-    const start = i * CHUNK_SIZE
-    const end = Math.min(file.size, start + CHUNK_SIZE)
-    const chunk = file.slice(start, end)
+    // 计算总分块数
+    const totalChunks = Math.ceil(file.size / CHUNK_SIZE)
     
     // 上传分块
-    await uploadChunk(uploadId, i, chunk)
+    for (let i = 0; i < totalChunks; i++) {
+      // 如果分块已上传，则跳过
+      if (uploadedChunks.includes(i)) {
+        continue
+      }
+      
+      // 计算分块的起始和结束位置
+      const start = i * CHUNK_SIZE
+      const end = Math.min(file.size, start + CHUNK_SIZE)
+      const chunk = file.slice(start, end)
+      
+      // 上传分块
+      await uploadChunk(uploadId, i, chunk)
+    }
+    
+    // 完成上传
+    const completeResponse = await completeChunkUpload(uploadId, totalChunks)
+    return completeResponse
+  } catch (error) {
+    // 上传失败时取消本次上传，释放服务端预占的空间
+    cancelChunkUpload(uploadId).catch(() => {})
+    throw error
   }
-  
-  // 完成上传
-  const completeResponse = await completeChunkUpload(uploadId, totalChunks)
-  return completeResponse
 }
 
 /**
@@ -130,6 +135,17 @@ export function completeChunkUpload(uploadId: string, totalChunks: number) {
   })
 }
 
+/**
+ * 取消分块上传，清理已上传的分块并释放预占空间
+ * @param uploadId 上传ID
+ */
+export function cancelChunkUpload(uploadId: string) {
+  return request({
+    url: `/api/files/chunk/${uploadId}`,
+    method: 'delete'
+  })
+}
+
 /**
  * 上传文件夹
  * @param files 文件列表
@@ -172,6 +188,22 @@ export function deleteFile(fileId: number) {
   })
 }
 
+/**
+ * 移动文件或文件夹
+ * @param fileId 文件ID
+ * @param targetParentId 目标目录ID，0表示根目录
+ * @returns 移动结果
+ */
+export function moveFile(fileId: number, targetParentId: number = 0) {
+  return request({
+    url: `/api/files/${fileId}/move`,
+    method: 'put',
+    params: {
+      targetParentId
+    }
+  })
+}
+
 /**
  * 获取文件下载链接
  * @param fileId 文件ID
@@ -184,6 +216,22 @@ export function getFileDownloadUrl(fileId: number) {
   })
 }
 
+/**
+ * 获取分段下载清单（大文件并行分段下载）
+ * @param fileId 文件ID
+ * @param segmentSize 分段大小（字节），不传时使用服务端默认值
+ * @returns 下载清单
+ */
+export function getDownloadManifest(fileId: number, segmentSize?: number) {
+  return request({
+    url: `/api/files/${fileId}/manifest`,
+    method: 'get',
+    params: {
+      segmentSize
+    }
+  })
+}
+
 /**
  * 更新文件公开状态
  * @param fileId 文件ID
@@ -205,16 +253,18 @@ export function updateFilePublicStatus(fileId: number, isPublic: boolean) {
  * @param parentId 父目录ID
  * @param page 页码
  * @param pageSize 每页大小
+ * @param withUrl 是否返回预签名下载链接（文件下载走代理接口，默认不需要）
  * @returns 文件列表
  */
-export function getUserFiles(parentId: number = 0, page: number = 1, pageSize: number = 10) {
+export function getUserFiles(parentId: number = 0, page: number = 1, pageSize: number = 10, withUrl: boolean = false) {
   return request({
     url: '/api/files/my',
     method: 'get',
     params: {
       parentId,
       page,
-      size: pageSize
+      size: pageSize,
+      withUrl
     }
   })
 }
@@ -223,15 +273,19 @@ export function getUserFiles(parentId: number = 0, page: number = 1, pageSize: n
  * 获取公开文件列表
  * @param page 页码
  * @param pageSize 每页大小
+ * @param withUrl 是否返回预签名下载链接（文件下载走代理接口，默认不需要）
+ * @param parentId 公开目录ID，传入时返回该目录下的文件
  * @returns 公开文件列表
  */
-export function getPublicFiles(page: number = 1, pageSize: number = 10) {
+export function getPublicFiles(page: number = 1, pageSize: number = 10, withUrl: boolean = false, parentId?: number) {
   return request({
     url: '/api/files/public',
     method: 'get',
     params: {
       page,
-      size: pageSize
+      size: pageSize,
+      withUrl,
+      parentId
     }
   })
 }
@@ -241,20 +295,94 @@ export function getPublicFiles(page: number = 1, pageSize: number = 10) {
  * @param keyword 关键词
  * @param page 页码
  * @param pageSize 每页大小
+ * @param withUrl 是否返回预签名下载链接（文件下载走代理接口，默认不需要）
  * @returns 搜索结果
  */
-export function searchFiles(keyword: string, page: number = 1, pageSize: number = 10) {
+export function searchFiles(keyword: string, page: number = 1, pageSize: number = 10, withUrl: boolean = false) {
   return request({
     url: '/api/files/search',
     method: 'get',
     params: {
       keyword,
       page,
+      size: pageSize,
+      withUrl
+    }
+  })
+}
+
+/**
+ * 游标分页获取用户文件列表
+ * @param parentId 父目录ID
+ * @param cursor 上一页返回的 nextCursor，第一页不传
+ * @param pageSize 每页大小
+ * @param withTotal 是否返回总数（只在第一页返回）
+ * @returns 文件列表及下一页游标
+ */
+export function getUserFilesByCursor(parentId: number = 0, cursor?: string, pageSize: number = 20, withTotal: boolean = false) {
+  return request({
+    url: '/api/files/my/cursor',
+    method: 'get',
+    params: {
+      parentId,
+      cursor,
+      size: pageSize,
+      withTotal
+    }
+  })
+}
+
+/**
+ * 游标分页获取公开文件列表
+ * @param cursor 上一页返回的 nextCursor，第一页不传
+ * @param pageSize 每页大小
+ * @param withTotal 是否返回总数（估计值）
+ * @param parentId 公开目录ID，传入时返回该目录下的文件
+ * @returns 文件列表及下一页游标
+ */
+export function getPublicFilesByCursor(cursor?: string, pageSize: number = 20, withTotal: boolean = false, parentId?: number) {
+  return request({
+    url: '/api/files/public/cursor',
+    method: 'get',
+    params: {
+      cursor,
+      size: pageSize,
+      withTotal,
+      parentId
+    }
+  })
+}
+
+/**
+ * 游标分页搜索文件
+ * @param keyword 关键词
+ * @param cursor 上一页返回的 nextCursor，第一页不传
+ * @param pageSize 每页大小
+ * @returns 搜索结果及下一页游标
+ */
+export function searchFilesByCursor(keyword: string, cursor?: string, pageSize: number = 20) {
+  return request({
+    url: '/api/files/search/cursor',
+    method: 'get',
+    params: {
+      keyword,
+      cursor,
       size: pageSize
     }
   })
 }
 
+/**
+ * 获取当前用户的存储用量及配额
+ * @returns 已用空间、文件数、配额及进行中上传预占的空间（字节）
+ */
+export function getStorageUsage() {
+  return request({
+    url: '/api/files/storage',
+    method: 'get'
+  })
+}
+
 /**
  * 使用Elasticsearch搜索私有文件
  * @param keyword 关键词
@@ -344,13 +472,32 @@ export function updateFolderPublicStatus(folderId: number, isPublic: boolean) {
  * @returns Blob对象
  */
 export function downloadFileDirectly(fileId: number) {
-  const token = localStorage.getItem('token')
-  return axios.get(`/api/files/proxy/${fileId}`, {
+  // 经由共享实例发送，访问令牌过期时自动刷新并重试；下载大文件不设超时
+  return request({
+    url: `/api/files/proxy/${fileId}`,
+    method: 'get',
     responseType: 'blob',
-    headers: {
-      'Authorization': token ? `Bearer ${token}` : ''
-    }
-  }).then(response => response.data)
+    timeout: 0
+  }) as unknown as Promise<Blob>
+}
+
+/**
+ * 获取图片缩略图（返回Blob对象）
+ * @param fileId 文件ID
+ * @param size 缩略图尺寸（最长边像素，服务端对齐到128/256/512）
+ * @returns Blob对象
+ */
+export function getThumbnail(fileId: number, size: number = 128) {
+  // 无法生成缩略图时由调用方显示默认图标，不弹出错误提示
+  return request({
+    url: `/api/files/${fileId}/thumb`,
+    method: 'get',
+    responseType: 'blob',
+    params: {
+      size
+    },
+    silent: true
+  } as any) as unknown as Promise<Blob>
 }
 
 /**
@@ -360,11 +507,17 @@ export function downloadFileDirectly(fileId: number) {
 export const fileApi = {
   getUserFiles,
   getPublicFiles,
+  getUserFilesByCursor,
+  getPublicFilesByCursor,
+  searchFilesByCursor,
+  getStorageUsage,
   uploadFile,
   uploadFolder,
   createFolder,
   getFileDownloadUrl,
+  getDownloadManifest,
   deleteFile,
+  moveFile,
   updateFilePublicStatus,
   updateFolderPublicStatus,
   searchFiles,
@@ -372,9 +525,11 @@ export const fileApi = {
   searchPublicFilesES,
   getFileInfo,
   downloadFileDirectly,
+  getThumbnail,
   // 断点续传相关API
   initChunkUpload,
   uploadChunk,
   getUploadedChunks,
-  completeChunkUpload
+  completeChunkUpload,
+  cancelChunkUpload
 }
\ No newline at end of file
@@ -59,6 +59,7 @@ export const useUserStore = defineStore('user', () => {
       const res = await login(username, password)
       token.value = res.token
       localStorage.setItem('token', token.value)
+      localStorage.setItem('refreshToken', res.refreshToken)
       userInfo.value = res.user
       
       // 获取背景图片信息
@@ -95,6 +96,7 @@ export const useUserStore = defineStore('user', () => {
       token.value = ''
       userInfo.value = null
       localStorage.removeItem('token')
+      localStorage.removeItem('refreshToken')
     } finally {
       loading.value = false
     }
@@ -114,6 +116,7 @@ export const useUserStore = defineStore('user', () => {
       backgroundImages.value = []
       currentBackgroundUrl.value = null
       localStorage.removeItem('token')
+      localStorage.removeItem('refreshToken')
       router.push('/login')
     }
   }
@@ -1,6 +1,7 @@
 import axios from 'axios'
 import type { AxiosResponse, AxiosError } from 'axios'
 import { ElMessage } from 'element-plus'
+import type { RefreshResponse } from '@/api/auth'
 
 // 创建axios实例
 const service = axios.create({
@@ -8,6 +9,30 @@ const service = axios.create({
   timeout: 15000
 })
 
+// 正在进行的刷新请求，并发的401响应共用同一次刷新
+let refreshing: Promise<string> | null = null
+
+/**
+ * 使用刷新令牌换取新的访问令牌并保存
+ * 刷新请求不经过本实例的拦截器，避免刷新失败时再次触发刷新
+ */
+function refreshAccessToken(): Promise<string> {
+  if (!refreshing) {
+    const refreshToken = localStorage.getItem('refreshToken')
+    refreshing = (refreshToken
+      ? axios.post<RefreshResponse>('/api/auth/refresh', { refreshToken }).then(response => response.data)
+      : Promise.reject(new Error('没有刷新令牌')))
+      .then(res => {
+        localStorage.setItem('token', res.token)
+        return res.token
+      })
+      .finally(() => {
+        refreshing = null
+      })
+  }
+  return refreshing
+}
+
 // 请求拦截器
 service.interceptors.request.use(
   (config) => {
@@ -30,20 +55,30 @@ service.interceptors.request.use(
 // 响应拦截器
 service.interceptors.response.use(
   (response: AxiosResponse) => {
-    // 检查是否有新的token在响应头中（自动续期）
-    const newToken = response.headers['authorization']
-    if (newToken && newToken.startsWith('Bearer ')) {
-      const token = newToken.substring(7)
-      localStorage.setItem('token', token)
-      console.log('令牌已自动刷新')
-    }
-    
     // 直接返回数据
     return response.data
   },
-  (error: AxiosError) => {
+  async (error: AxiosError) => {
+    // 访问令牌过期时先刷新令牌再重试原请求，每个请求只重试一次
+    const config = error.config as any
+    if (error.response?.status === 401 && config && !config._retried && localStorage.getItem('refreshToken')) {
+      config._retried = true
+      try {
+        const token = await refreshAccessToken()
+        config.headers['Authorization'] = `Bearer ${token}`
+        return service(config)
+      } catch (refreshError) {
+        console.error('刷新令牌失败:', refreshError)
+      }
+    }
+
     console.error('响应错误:', error)
     
+    // 调用方自行处理失败的请求（如缩略图）不弹出错误提示
+    if (config?.silent && error.response?.status !== 401) {
+      return Promise.reject(error)
+    }
+    
     let message = '连接服务器失败'
     
     if (error.code === 'ECONNABORTED') {
@@ -61,6 +96,7 @@ service.interceptors.response.use(
           message = '未授权，请重新登录'
           // 清除token并跳转到登录页
           localStorage.removeItem('token')
+          localStorage.removeItem('refreshToken')
           location.reload()
           break
         case 403:
@@ -69,6 +105,9 @@ service.interceptors.response.use(
         case 404:
           message = '请求地址错误'
           break
+        case 429:
+          message = (error.response.data as any)?.message || '请求过于频繁，请稍后重试'
+          break
         case 500:
           message = '服务器内部错误'
           break